@@ -0,0 +1,294 @@
+package com.study.spring.orm.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 为@Entity类生成{实体类名}_EntityMapper
+ * 规则与运行时的EntityOperation一致：跳过static和@Transient字段，列名取@Column(name)或字段名；
+ * 只处理ClassMappings支持的类型和枚举。SQL由运行时的SqlTemplate生成，以便支持动态表名
+ */
+@SupportedAnnotationTypes("javax.persistence.Entity")
+public class EntityMapperProcessor extends AbstractProcessor {
+    private static final String SUFFIX = "_EntityMapper";
+    private static final String COLUMN = "javax.persistence.Column";
+    private static final String TRANSIENT = "javax.persistence.Transient";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (TypeElement annotation : annotations) {
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                if (element.getKind() != ElementKind.CLASS) {
+                    continue;
+                }
+                TypeElement type = (TypeElement) element;
+                if (type.getNestingKind() != NestingKind.TOP_LEVEL) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                            "只为顶层实体类生成映射器，跳过", type);
+                    continue;
+                }
+                try {
+                    generate(type);
+                } catch (IOException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                            "生成映射器失败：" + e.getMessage(), type);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void generate(TypeElement type) throws IOException {
+        String packageName = ((PackageElement) type.getEnclosingElement()).getQualifiedName().toString();
+        String entityName = type.getSimpleName().toString();
+        String mapperName = entityName + SUFFIX;
+
+        List<Column> columns = new ArrayList<Column>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC) || annotation(field, TRANSIENT) != null) {
+                continue;
+            }
+            ColumnType columnType = ColumnType.of(field.asType());
+            if (columnType == null) {
+                continue;
+            }
+            String columnName = annotationValue(field, COLUMN, "name");
+            if (columnName == null || columnName.isEmpty()) {
+                columnName = field.getSimpleName().toString();
+            }
+            columns.add(new Column(field.getSimpleName().toString(), columnName, columnType, field.asType()));
+        }
+
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+                (packageName.isEmpty() ? "" : packageName + ".") + mapperName, type);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            if (!packageName.isEmpty()) {
+                out.println("package " + packageName + ";");
+                out.println();
+            }
+            out.println("import java.sql.ResultSet;");
+            out.println("import java.sql.SQLException;");
+            out.println();
+            out.println("// Generated by EntityMapperProcessor, do not edit");
+            out.println("public final class " + mapperName + " implements com.study.spring.orm.framework.EntityMapper<" + entityName + "> {");
+            out.println("    private static final String[] COLUMNS = {");
+            for (Column column : columns) {
+                out.println("            \"" + column.name + "\",");
+            }
+            out.println("    };");
+            out.println();
+            out.println("    public String[] columns() {");
+            out.println("        return COLUMNS.clone();");
+            out.println("    }");
+            out.println();
+            out.println("    public " + entityName + " newInstance() {");
+            out.println("        return new " + entityName + "();");
+            out.println("    }");
+            out.println();
+
+            out.println("    public void read(" + entityName + " entity, int column, ResultSet rs, int index) throws SQLException {");
+            out.println("        switch (column) {");
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                out.println("            case " + i + ": {");
+                column.type.printRead(out, column, "                ");
+                out.println("                break;");
+                out.println("            }");
+            }
+            out.println("            default:");
+            out.println("                throw new IllegalArgumentException(\"column \" + column);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+
+            out.println("    public Object get(" + entityName + " entity, int column) {");
+            out.println("        switch (column) {");
+            for (int i = 0; i < columns.size(); i++) {
+                out.println("            case " + i + ":");
+                out.println("                return entity." + columns.get(i).getter() + "();");
+            }
+            out.println("            default:");
+            out.println("                throw new IllegalArgumentException(\"column \" + column);");
+            out.println("        }");
+            out.println("    }");
+            out.println();
+
+            out.println("    public void set(" + entityName + " entity, int column, Object value) {");
+            out.println("        switch (column) {");
+            for (int i = 0; i < columns.size(); i++) {
+                Column column = columns.get(i);
+                out.println("            case " + i + ":");
+                out.println("                entity." + column.setter() + "((" + column.boxedTypeName() + ") value);");
+                out.println("                break;");
+            }
+            out.println("            default:");
+            out.println("                throw new IllegalArgumentException(\"column \" + column);");
+            out.println("        }");
+            out.println("    }");
+            out.println("}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static AnnotationMirror annotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotationType = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private static String annotationValue(Element element, String annotationName, String attribute) {
+        AnnotationMirror mirror = annotation(element, annotationName);
+        if (mirror == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return String.valueOf(entry.getValue().getValue());
+            }
+        }
+        return null;
+    }
+
+    // 一个映射列
+    private static final class Column {
+        final String field;
+        final String name;
+        final ColumnType type;
+        final TypeMirror typeMirror;
+
+        Column(String field, String name, ColumnType type, TypeMirror typeMirror) {
+            this.field = field;
+            this.name = name;
+            this.type = type;
+            this.typeMirror = typeMirror;
+        }
+
+        String property() {
+            return Character.toUpperCase(field.charAt(0)) + field.substring(1);
+        }
+
+        String getter() {
+            return (type == ColumnType.PRIMITIVE_BOOLEAN ? "is" : "get") + property();
+        }
+
+        String setter() {
+            return "set" + property();
+        }
+
+        String typeName() {
+            return typeMirror.toString();
+        }
+
+        String boxedTypeName() {
+            return type.boxed != null ? type.boxed : typeName();
+        }
+    }
+
+    // 支持的列类型，与ClassMappings.SUPPORTED_SQL_OBJECTS保持一致
+    private enum ColumnType {
+        PRIMITIVE_BOOLEAN("boolean", "Boolean", "Boolean"),
+        BOOLEAN("java.lang.Boolean", "Boolean", "Boolean"),
+        PRIMITIVE_SHORT("short", "Short", "Short"),
+        SHORT("java.lang.Short", "Short", "Short"),
+        PRIMITIVE_INT("int", "Int", "Integer"),
+        INT("java.lang.Integer", "Int", "Integer"),
+        PRIMITIVE_LONG("long", "Long", "Long"),
+        LONG("java.lang.Long", "Long", "Long"),
+        PRIMITIVE_FLOAT("float", "Float", "Float"),
+        FLOAT("java.lang.Float", "Float", "Float"),
+        PRIMITIVE_DOUBLE("double", "Double", "Double"),
+        DOUBLE("java.lang.Double", "Double", "Double"),
+        STRING("java.lang.String", "String", null),
+        DATE("java.sql.Date", "Date", null),
+        TIMESTAMP("java.sql.Timestamp", "Timestamp", null),
+        BIG_DECIMAL("java.math.BigDecimal", "BigDecimal", null),
+        ENUM(null, "String", null);
+
+        final String javaType;
+        final String jdbcSuffix;
+        final String boxed;
+
+        ColumnType(String javaType, String jdbcSuffix, String boxed) {
+            this.javaType = javaType;
+            this.jdbcSuffix = jdbcSuffix;
+            this.boxed = boxed;
+        }
+
+        static ColumnType of(TypeMirror type) {
+            if (type instanceof DeclaredType
+                    && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM) {
+                return ENUM;
+            }
+            String name = type.toString();
+            for (ColumnType columnType : values()) {
+                if (name.equals(columnType.javaType)) {
+                    return columnType;
+                }
+            }
+            return null;
+        }
+
+        // 基本类型及其包装类按基本类型读取，再判断wasNull
+        private boolean readsPrimitive() {
+            return boxed != null;
+        }
+
+        void printRead(PrintWriter out, Column column, String indent) {
+            String get = "rs.get" + jdbcSuffix + "(index)";
+            if (this == ENUM) {
+                out.println(indent + "String v = " + get + ";");
+                out.println(indent + "if (v != null) {");
+                out.println(indent + "    entity." + column.setter() + "(" + column.typeName() + ".valueOf(v));");
+                out.println(indent + "}");
+            } else if (readsPrimitive()) {
+                out.println(indent + primitiveName() + " v = " + get + ";");
+                out.println(indent + "if (!rs.wasNull()) {");
+                out.println(indent + "    entity." + column.setter() + "(v);");
+                out.println(indent + "}");
+            } else {
+                out.println(indent + javaType + " v = " + get + ";");
+                out.println(indent + "if (v != null) {");
+                out.println(indent + "    entity." + column.setter() + "(v);");
+                out.println(indent + "}");
+            }
+        }
+
+        private String primitiveName() {
+            return "Integer".equals(boxed) ? "int" : boxed.toLowerCase();
+        }
+    }
+}
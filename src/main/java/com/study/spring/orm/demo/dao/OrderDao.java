@@ -2,13 +2,21 @@ package com.study.spring.orm.demo.dao;
 
 import com.study.spring.orm.demo.entity.Order;
 import com.study.spring.orm.framework.BaseDaoSupport;
+import org.apache.log4j.Logger;
 
 import javax.annotation.Resource;
 import javax.core.common.jdbc.datasource.DynamicDataSource;
+import javax.core.common.jdbc.datasource.RoutingContext;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class OrderDao extends BaseDaoSupport<Order, Long> {
+    private static final Logger log = Logger.getLogger(OrderDao.class);
 
     private SimpleDateFormat yearFormat = new SimpleDateFormat("yyyy");
     private SimpleDateFormat fullDataFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -25,7 +33,7 @@ public class OrderDao extends BaseDaoSupport<Order, Long> {
         this.setDataSourceWrite(dataSource);
     }
 
-    public boolean insertOne(Order order) throws Exception{
+    public boolean insertOne(final Order order) throws Exception{
         //约定优于配置
         Date date = null;
         if(order.getCreateTime() == null){
@@ -35,13 +43,54 @@ public class OrderDao extends BaseDaoSupport<Order, Long> {
             date = new Date(order.getCreateTime());
         }
         Integer dbRouter = Integer.valueOf(yearFormat.format(date));
-        System.out.println("自动分配到【DB_" + dbRouter + "】数据源");
-        this.dataSource.getDataSourceEntry().set(dbRouter);
+        log.info("自动分配到【DB_" + dbRouter + "】数据源");
 
         order.setCreateTimeFmt(fullDataFormat.format(date));
 
-        Long orderId = super.insertAndReturnId(order);
+        Long orderId = RoutingContext.call(RoutingContext.forYear(dbRouter), new Callable<Long>() {
+            public Long call() throws Exception {
+                return insertAndReturnId(order);
+            }
+        });
         order.setId(orderId);
         return orderId > 0;
     }
+
+    /**
+     * 批量插入订单，按创建时间的年份分组，每组在对应数据源中批量执行
+     * @param orders
+     * @return 插入的条数
+     * @throws Exception
+     */
+    public int insertBatch(List<Order> orders) throws Exception{
+        Map<Integer, List<Order>> byYear = new LinkedHashMap<Integer, List<Order>>();
+        for (Order order : orders) {
+            Date date = null;
+            if(order.getCreateTime() == null){
+                date = new Date();
+                order.setCreateTime(date.getTime());
+            }else {
+                date = new Date(order.getCreateTime());
+            }
+            order.setCreateTimeFmt(fullDataFormat.format(date));
+            Integer dbRouter = Integer.valueOf(yearFormat.format(date));
+            List<Order> group = byYear.get(dbRouter);
+            if(group == null){
+                group = new ArrayList<Order>();
+                byYear.put(dbRouter, group);
+            }
+            group.add(order);
+        }
+        int count = 0;
+        for (final Map.Entry<Integer, List<Order>> entry : byYear.entrySet()) {
+            log.info("批量分配到【DB_" + entry.getKey() + "】数据源，共" + entry.getValue().size() + "条");
+            // 主键由insertAllReturnIds写回订单
+            count += RoutingContext.call(RoutingContext.forYear(entry.getKey()), new Callable<Integer>() {
+                public Integer call() throws Exception {
+                    return insertAllReturnIds(entry.getValue()).length;
+                }
+            });
+        }
+        return count;
+    }
 }
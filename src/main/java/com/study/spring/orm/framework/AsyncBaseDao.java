@@ -0,0 +1,199 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+
+import javax.core.common.Page;
+import javax.core.common.jdbc.datasource.RoutingContext;
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DAO的异步门面，方法与BaseDaoSupport对应，返回CompletableFuture
+ * 任务在提交时记录当前线程的数据源标记，在执行线程中使用同一个数据源；
+ * 每个连接池同时执行的任务数不超过Druid的maxActive，多出的任务在执行线程中等待，不占用连接
+ * 默认在JDK 21及以上使用虚拟线程，否则使用有界线程池；线程池已满时返回异常完成的future，任务不会在提交线程中执行
+ * @param <T>
+ * @param <PK>
+ */
+public class AsyncBaseDao<T extends Serializable, PK extends Serializable> {
+    private static final Logger log = Logger.getLogger(AsyncBaseDao.class);
+
+    private final BaseDaoSupport<T, PK> dao;
+    private final Executor executor;
+
+    public AsyncBaseDao(BaseDaoSupport<T, PK> dao) {
+        this(dao, defaultExecutor());
+    }
+
+    /**
+     * @param dao
+     * @param executor 执行数据库操作的线程池，拒绝策略不应在提交线程中执行任务，否则提交方会阻塞在数据库操作上
+     */
+    public AsyncBaseDao(BaseDaoSupport<T, PK> dao, Executor executor) {
+        this.dao = dao;
+        this.executor = executor;
+    }
+
+    public BaseDaoSupport<T, PK> getDao() {
+        return dao;
+    }
+
+    /**
+     * 指定连接池同时执行的异步任务数，覆盖按maxActive得到的默认值
+     * @param dataSource 实际的连接池，不是路由数据源
+     * @param maxConcurrency
+     */
+    public static void setMaxConcurrency(DataSource dataSource, int maxConcurrency) {
+        DataSourcePermits.set(dataSource, maxConcurrency);
+    }
+
+    /**
+     * 共享的默认线程池，JDK 21及以上为每个任务一个虚拟线程
+     * @return
+     */
+    public static Executor defaultExecutor() {
+        return ExecutorHolder.executor;
+    }
+
+    public CompletableFuture<T> get(final PK id) {
+        return submit(dao.getDataSourceReadOnly(), new Callable<T>() {
+            public T call() throws Exception {
+                return dao.get(id);
+            }
+        });
+    }
+
+    public CompletableFuture<List<T>> select(final QueryRule queryRule) {
+        return submit(dao.getDataSourceReadOnly(), new Callable<List<T>>() {
+            public List<T> call() throws Exception {
+                return dao.select(queryRule);
+            }
+        });
+    }
+
+    public CompletableFuture<Page<T>> select(final QueryRule queryRule, final int pageNo, final int pageSize) {
+        return submit(dao.getDataSourceReadOnly(), new Callable<Page<T>>() {
+            public Page<T> call() throws Exception {
+                return dao.select(queryRule, pageNo, pageSize);
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> insert(final T entity) {
+        return submit(dao.getDataSourceWrite(), new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return dao.insert(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<PK> insertAndReturnId(final T entity) {
+        return submit(dao.getDataSourceWrite(), new Callable<PK>() {
+            public PK call() throws Exception {
+                return dao.insertAndReturnId(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Integer> insertAll(final List<T> list) {
+        return submit(dao.getDataSourceWrite(), new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return dao.insertAll(list);
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> update(final T entity) {
+        return submit(dao.getDataSourceWrite(), new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return dao.update(entity);
+            }
+        });
+    }
+
+    public CompletableFuture<Boolean> delete(final T entity) {
+        return submit(dao.getDataSourceWrite(), new Callable<Boolean>() {
+            public Boolean call() throws Exception {
+                return dao.delete(entity);
+            }
+        });
+    }
+
+    /**
+     * 在执行线程中使用提交时的数据源标记执行任务，执行前取得连接池的计数
+     */
+    private <V> CompletableFuture<V> submit(DataSource dataSource, final Callable<V> task) {
+        final CompletableFuture<V> future = new CompletableFuture<V>();
+        final Semaphore permits;
+        try {
+            // 路由数据源按提交线程的标记解析连接池
+            permits = DataSourcePermits.of(dataSource);
+            executor.execute(RoutingContext.wrap(new Runnable() {
+                public void run() {
+                    if(permits != null){
+                        try {
+                            permits.acquire();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            future.completeExceptionally(e);
+                            return;
+                        }
+                    }
+                    try {
+                        future.complete(task.call());
+                    } catch (Throwable e) {
+                        if(e instanceof InterruptedException){
+                            Thread.currentThread().interrupt();
+                        }
+                        future.completeExceptionally(e);
+                    } finally {
+                        if(permits != null){
+                            permits.release();
+                        }
+                    }
+                }
+            }));
+        } catch (RuntimeException e) {
+            // 包括线程池已满时的RejectedExecutionException
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    // 默认线程池，第一次使用时创建
+    private static class ExecutorHolder {
+        static final Executor executor = create();
+
+        private static Executor create() {
+            try {
+                // JDK 21的Executors.newVirtualThreadPerTaskExecutor，编译目标为Java 8，只能反射调用
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (Exception e) {
+                log.debug("不支持虚拟线程，使用有界线程池");
+            }
+            final AtomicInteger index = new AtomicInteger();
+            int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 4);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * 64), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "async-dao-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            return pool;
+        }
+    }
+}
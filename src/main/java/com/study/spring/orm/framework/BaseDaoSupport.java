@@ -3,26 +3,41 @@ package com.study.spring.orm.framework;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
 import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
 import org.springframework.jdbc.core.PreparedStatementCreator;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 
+import javax.core.common.KeysetPage;
 import javax.core.common.Page;
 import javax.core.common.jdbc.BaseDao;
+import javax.core.common.jdbc.datasource.RoutingContext;
 import javax.core.common.utils.BeanUtils;
 import javax.core.common.utils.DataUtils;
 import javax.core.common.utils.GenericsUtils;
 import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
 import java.sql.*;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializable> implements BaseDao<T, PK> {
     private Logger log = Logger.getLogger(BaseDaoSupport.class);
@@ -37,11 +52,44 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
     private EntityOperation<T> op;
 
+    // 按主键读写时不涉及实体列
+    private static final BitSet NO_COLUMNS = new BitSet();
+    private static final Object[] NO_VALUES = new Object[0];
+
+    // insertAllReturnIds每次执行的最多行数，同时限制返回主键的结果集大小
+    private static final int RETURN_IDS_BATCH_ROWS = 1000;
+
+    // 数据库方言，为null时在第一次使用时根据写数据源识别
+    private volatile Dialect dialect;
+
+    // 分页查询默认的总数统计方式
+    private PageMode pageMode = PageMode.COUNT;
+    // 并发查询总数的线程池，为null时使用共享线程池
+    private ExecutorService countExecutor;
+    // 总数缓存，默认有效期1分钟
+    private CountCache countCache = new CountCache(60 * 1000L);
+
+    // 脏数据跟踪，为null时update更新全部非空列
+    private DirtyTracker<T> dirtyTracker;
+    private RowMapper<T> trackingRowMapper;
+
+    // 异步写缓冲，为null时insert/update/delete同步执行
+    private volatile WriteBehindBuffer<T> writeBehind;
+
+    // 并行扫描的线程池，为null时使用共享线程池
+    private ExecutorService scanExecutor;
+
+    // 流式查询的fetchSize，为0时使用方言的默认值
+    private int streamFetchSize;
+
+    // 本地写日志，为null时saveOrJournal/deleteOrJournal直接写数据库
+    private volatile WriteJournal<T> journal;
+
 
     public BaseDaoSupport() {
         try {
             Class<T> entityClass = GenericsUtils.getSuperClassGenricType(getClass(), 0);
-            op = new EntityOperation<T>(entityClass, this.getPKColumn());
+            op = EntityOperationRegistry.get(entityClass, this.getPKColumn());
             this.setTableName(op.tableName);
         } catch (Exception e) {
             e.printStackTrace();
@@ -82,6 +130,273 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         jdbcTemplateWrite = new JdbcTemplate(dataSourceWrite);
     }
 
+    /**
+     * 开启或关闭脏数据跟踪
+     * 开启后通过get/select加载的实体会保存快照，update时只更新变化的列，没有变化时不执行SQL
+     * 快照区分加载时的数据源标记和表名，update必须在与加载时相同的RoutingContext中执行
+     * @param dirtyTracking
+     */
+    public void setDirtyTracking(boolean dirtyTracking) {
+        if(!dirtyTracking){
+            this.dirtyTracker = null;
+            this.trackingRowMapper = null;
+            return;
+        }
+        final DirtyTracker<T> tracker = new DirtyTracker<T>(op);
+        final RowMapper<T> rowMapper = op.rowMapper;
+        this.trackingRowMapper = new RowMapper<T>() {
+            public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+                T t = rowMapper.mapRow(rs, rowNum);
+                try {
+                    tracker.track(getTableName(), op.pkField.get(t), t);
+                } catch (Exception e) {
+                    log.warn("记录实体快照失败", e);
+                }
+                return t;
+            }
+        };
+        this.dirtyTracker = tracker;
+    }
+
+    /**
+     * 指定数据库方言，不指定时根据写数据源自动识别
+     * @param dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    protected Dialect getDialect() {
+        Dialect d = this.dialect;
+        if(d == null){
+            d = Dialects.detect(getDataSourceWrite());
+            this.dialect = d;
+        }
+        return d;
+    }
+
+    /**
+     * 设置分页查询默认的总数统计方式
+     * @param pageMode
+     */
+    public void setPageMode(PageMode pageMode) {
+        this.pageMode = pageMode;
+    }
+
+    /**
+     * 设置并发查询总数使用的线程池
+     * @param countExecutor
+     */
+    public void setCountExecutor(ExecutorService countExecutor) {
+        this.countExecutor = countExecutor;
+    }
+
+    /**
+     * 设置流式查询的fetchSize，MySQL需要连接串开启useCursorFetch才能使用正数
+     * @param streamFetchSize 为0时使用方言的默认值
+     */
+    public void setStreamFetchSize(int streamFetchSize) {
+        this.streamFetchSize = streamFetchSize;
+    }
+
+    /**
+     * 设置总数缓存的有效期
+     * @param countCacheTtl 毫秒
+     */
+    public void setCountCacheTtl(long countCacheTtl) {
+        this.countCache = new CountCache(countCacheTtl);
+    }
+
+    /**
+     * 开启异步写缓冲，之后insert/update/delete只放入缓冲区并立即返回true，由后台线程批量写入
+     * 同一主键的多次写入合并为一次，见WriteBehindBuffer.merge；写入前通过本DAO查询读到的仍是旧数据
+     * @param capacity 缓冲区最多的待写入条数，满时写入方阻塞
+     * @param batchSize 积累到多少条时立即写入
+     * @param flushIntervalMillis 最长等待多久写入一次
+     * @param listener 批量写入失败时的回调，可以为null
+     * @return
+     */
+    public WriteBehindBuffer<T> enableWriteBehind(int capacity, int batchSize, long flushIntervalMillis,
+                                                  WriteBehindBuffer.FailureListener<T> listener) {
+        WriteBehindBuffer<T> buffer = new WriteBehindBuffer<T>(this, capacity, batchSize, flushIntervalMillis, listener);
+        WriteBehindBuffer<T> previous = this.writeBehind;
+        this.writeBehind = buffer;
+        if(previous != null){
+            previous.close();
+        }
+        return buffer;
+    }
+
+    /**
+     * 关闭异步写缓冲，写入剩余数据后恢复同步写入
+     */
+    public void disableWriteBehind() {
+        WriteBehindBuffer<T> buffer = this.writeBehind;
+        this.writeBehind = null;
+        if(buffer != null){
+            buffer.close();
+        }
+    }
+
+    /**
+     * 开启异步写缓冲时，立即写入已提交的数据
+     */
+    public void flush() {
+        WriteBehindBuffer<T> buffer = this.writeBehind;
+        if(buffer != null){
+            buffer.flush();
+        }
+    }
+
+    /**
+     * 放入异步写缓冲，返回false时由调用方同步写入
+     * 读到的缓冲可能正被enable/disableWriteBehind切换关闭，这时改用当前的缓冲，没有缓冲时同步写入
+     */
+    private boolean writeBehind(WriteBehindBuffer.Kind kind, T entity) throws Exception {
+        WriteBehindBuffer<T> buffer = this.writeBehind;
+        while (buffer != null) {
+            if(buffer.submit(kind, entity)){
+                return true;
+            }
+            WriteBehindBuffer<T> current = this.writeBehind;
+            if(current == buffer){
+                // 缓冲被直接关闭，没有经过disableWriteBehind
+                return false;
+            }
+            buffer = current;
+        }
+        return false;
+    }
+
+    // 实体的主键值，没有主键字段时为null
+    Object pkValue(T entity) throws IllegalAccessException {
+        return op.pkField == null ? null : op.pkField.get(entity);
+    }
+
+    EntityOperation<T> operation() {
+        return op;
+    }
+
+    /**
+     * 开启本地写日志，数据库不可用时saveOrJournal/deleteOrJournal把写入记录到日志中
+     * 目录中已有未回放的日志时继续使用；后台每隔WriteJournal.DEFAULT_REPLAY_INTERVAL_MILLIS尝试回放
+     * @param dir 日志目录
+     * @param segmentBytes 每个段文件的大小
+     * @return
+     * @throws IOException
+     */
+    public WriteJournal<T> openJournal(File dir, int segmentBytes) throws IOException {
+        return openJournal(dir, segmentBytes, WriteJournal.DEFAULT_REPLAY_INTERVAL_MILLIS);
+    }
+
+    /**
+     * 开启本地写日志，日志回放完之前的写入都记录到日志中，回放完后恢复直接写数据库
+     * @param dir 日志目录
+     * @param segmentBytes 每个段文件的大小
+     * @param replayIntervalMillis 后台尝试回放的间隔，不大于0时不启动后台回放，需要自己调用replayJournal
+     * @return
+     * @throws IOException
+     * @throws IllegalArgumentException 实体中有写日志不支持的列类型
+     */
+    public WriteJournal<T> openJournal(File dir, int segmentBytes, long replayIntervalMillis) throws IOException {
+        WriteJournal<T> opened = new WriteJournal<T>(this, dir, segmentBytes);
+        if(replayIntervalMillis > 0){
+            opened.startReplayer(replayIntervalMillis, WriteJournal.DEFAULT_REPLAY_BATCH_SIZE);
+        }
+        WriteJournal<T> previous = this.journal;
+        this.journal = opened;
+        if(previous != null){
+            previous.close();
+        }
+        return opened;
+    }
+
+    /**
+     * 关闭本地写日志，未回放的记录保留在目录中
+     */
+    public void closeJournal() {
+        WriteJournal<T> current = this.journal;
+        this.journal = null;
+        if(current != null){
+            current.close();
+        }
+    }
+
+    /**
+     * 保存对象，数据库连接失败或超时时记录到本地写日志
+     * 日志中还有未回放的记录时直接写日志，避免新数据被之后回放的旧数据覆盖
+     * @param entity 主键不能为空
+     * @return
+     * @throws Exception
+     */
+    public boolean saveOrJournal(T entity) throws Exception {
+        WriteJournal<T> current = this.journal;
+        if(current == null){
+            return save(entity);
+        }
+        if(current.pending() == 0){
+            try {
+                return save(entity);
+            } catch (DataAccessException e) {
+                if(!isUnavailable(e)){
+                    throw e;
+                }
+                log.warn(getTableName() + "写入失败，记录到本地写日志: " + e.getMessage());
+            }
+        }
+        current.save(entity);
+        return true;
+    }
+
+    /**
+     * 删除对象，数据库连接失败或超时时记录到本地写日志
+     * @param entity 主键不能为空
+     * @return
+     * @throws Exception
+     */
+    public boolean deleteOrJournal(T entity) throws Exception {
+        WriteJournal<T> current = this.journal;
+        if(current == null){
+            return delete(entity);
+        }
+        if(current.pending() == 0){
+            try {
+                return delete(entity);
+            } catch (DataAccessException e) {
+                if(!isUnavailable(e)){
+                    throw e;
+                }
+                log.warn(getTableName() + "删除失败，记录到本地写日志: " + e.getMessage());
+            }
+        }
+        current.delete(entity);
+        return true;
+    }
+
+    /**
+     * 数据库恢复后回放本地写日志
+     * @param batchSize 每批最多的记录数
+     * @return 回放的记录数
+     * @throws Exception 数据库仍不可用时抛出，已回放的部分不会重复执行
+     */
+    public long replayJournal(int batchSize) throws Exception {
+        WriteJournal<T> current = this.journal;
+        return current == null ? 0 : current.replay(batchSize);
+    }
+
+    // 连接失败、超时等数据库暂时不可用的异常，约束冲突等其他异常不写日志
+    private static boolean isUnavailable(DataAccessException e) {
+        return e instanceof DataAccessResourceFailureException
+                || e instanceof TransientDataAccessException
+                || e instanceof RecoverableDataAccessException;
+    }
+
+    // 查询实体时使用的RowMapper，开启脏数据跟踪时会记录快照
+    private RowMapper<T> rowMapper(){
+        RowMapper<T> rowMapper = this.trackingRowMapper;
+        return rowMapper != null ? rowMapper : op.rowMapper;
+    }
+
     private JdbcTemplate jdbcTemplateReadOnly(){
         return this.jdbcTemplateReadOnly;
     }
@@ -107,7 +422,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     }
 
     protected T get(PK id) throws Exception{
-        return (T)this.doLoad(id, this.op.rowMapper);
+        return (T)this.doLoad(id, rowMapper());
     }
 
     /**
@@ -126,9 +441,8 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     }
 
     private Object doLoad(String tableName, String pkName, Object pkValue, RowMapper rowMapper) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("select * from ").append(tableName).append(" where ").append(pkName).append(" = ?");
-        List<Object> list =this.jdbcTemplateReadOnly().query(sb.toString(), rowMapper, pkValue);
+        SqlTemplate template = op.template(SqlTemplate.SELECT_BY_PK, tableName, pkName, NO_COLUMNS);
+        List<Object> list =this.jdbcTemplateReadOnly().query(template.sql, template.setter(NO_VALUES, pkValue), rowMapper);
         if(list == null || list.isEmpty()){
             return null;
         }
@@ -149,7 +463,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      */
     protected List<T> getAll() throws Exception{
         String sql = "select " + op.allColumn + " from " + getTableName();
-        return this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper,new HashMap<String, Object>());
+        return this.jdbcTemplateReadOnly().query(sql, rowMapper());
     }
 
     /**
@@ -159,7 +473,125 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public PK insertAndReturnId(T entity) throws Exception{
-        return (PK)this.doInsertReturnKey(parse(entity));
+        return (PK)this.doInsertReturnKey(entity);
+    }
+
+    /**
+     * 批量插入并返回自增主键，主键会写回实体
+     * 非空列相同的实体使用同一条语句批量执行；已有主键的实体直接返回原主键
+     * 主键字段和已有主键的值在插入前检查，不符合时不插入任何记录
+     * @param list
+     * @return 与list顺序一致的主键
+     * @throws Exception
+     */
+    public long[] insertAllReturnIds(List<T> list) throws Exception {
+        checkReturnIdPkField();
+        final long[] ids = new long[list.size()];
+        int pkIndex = op.columnIndex(getPKColumn());
+        Map<BitSet, List<Integer>> groups = new LinkedHashMap<BitSet, List<Integer>>();
+        final Object[][] rows = new Object[list.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[op.columns.length];
+            BitSet columns = op.readColumns(list.get(i), rows[i]);
+            if(pkIndex >= 0 && columns.get(pkIndex)){
+                ids[i] = toReturnId(rows[i][pkIndex]);
+            }
+            List<Integer> indexes = groups.get(columns);
+            if(indexes == null){
+                indexes = new ArrayList<Integer>();
+                groups.put(columns, indexes);
+            }
+            indexes.add(i);
+        }
+        final Dialect dialect = getDialect();
+        final String pkName = getPKColumn();
+        for (Map.Entry<BitSet, List<Integer>> group : groups.entrySet()) {
+            final SqlTemplate template = op.template(SqlTemplate.INSERT, getTableName(), null, group.getKey());
+            final boolean withPk = pkIndex >= 0 && group.getKey().get(pkIndex);
+            List<Integer> indexes = group.getValue();
+            for (int from = 0; from < indexes.size(); from += RETURN_IDS_BATCH_ROWS) {
+                final List<Integer> chunk = indexes.subList(from, Math.min(from + RETURN_IDS_BATCH_ROWS, indexes.size()));
+                this.jdbcTemplateWrite().execute(new PreparedStatementCreator() {
+                    public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
+                        return withPk ? connection.prepareStatement(template.sql)
+                                : dialect.prepareReturningKeys(connection, template.sql, pkName);
+                    }
+                }, new PreparedStatementCallback<Object>() {
+                    public Object doInPreparedStatement(PreparedStatement ps) throws SQLException {
+                        for (Integer index : chunk) {
+                            template.bind(ps, rows[index], null);
+                            ps.addBatch();
+                        }
+                        ps.executeBatch();
+                        if(withPk){
+                            return null;
+                        }
+                        ResultSet rs = ps.getGeneratedKeys();
+                        try {
+                            for (Integer index : chunk) {
+                                if(!rs.next()){
+                                    throw new IllegalStateException("数据库返回的主键数少于插入的行数");
+                                }
+                                ids[index] = rs.getLong(1);
+                            }
+                        } finally {
+                            rs.close();
+                        }
+                        return null;
+                    }
+                });
+            }
+            if(!withPk){
+                for (Integer index : indexes) {
+                    setPkValue(list.get(index), ids[index]);
+                }
+            }
+        }
+        return ids;
+    }
+
+    // 自增主键要写回实体，主键字段必须存在且能保存long值
+    private void checkReturnIdPkField() {
+        if(op.pkField == null){
+            throw new IllegalStateException(op.entityClass.getName() + "没有找到主键字段，无法返回主键");
+        }
+        if(!canReturnIds()){
+            throw new IllegalStateException(op.entityClass.getName() + "的主键" + op.pkField.getName()
+                    + "类型为" + op.pkField.getType().getName() + "，无法保存自增主键");
+        }
+    }
+
+    // 主键字段可以保存自增主键
+    boolean canReturnIds() {
+        if(op.pkField == null){
+            return false;
+        }
+        Class<?> type = op.pkField.getType();
+        return type == Long.class || type == long.class || type == Integer.class || type == int.class || type == String.class;
+    }
+
+    // 已有主键按long返回，字符串主键必须是数字
+    private static long toReturnId(Object pkValue) {
+        if(pkValue instanceof Number){
+            return ((Number) pkValue).longValue();
+        }
+        try {
+            return Long.parseLong(pkValue.toString());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("主键" + pkValue + "不是数字，无法按long返回", e);
+        }
+    }
+
+    // 把自增主键写回实体，按主键字段类型转换
+    private void setPkValue(T entity, long id) throws IllegalAccessException {
+        Class<?> type = op.pkField.getType();
+        if(type == Integer.class || type == int.class){
+            op.pkField.set(entity, (int) id);
+        } else if(type == String.class){
+            op.pkField.set(entity, String.valueOf(id));
+        } else {
+            op.pkField.set(entity, id);
+        }
     }
 
     /**
@@ -169,7 +601,10 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public boolean insert(T entity) throws Exception {
-        return this.doInsert(parse(entity));
+        if(this.writeBehind(WriteBehindBuffer.Kind.INSERT, entity)){
+            return true;
+        }
+        return this.doInsert(entity);
     }
 
     /**
@@ -179,73 +614,62 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public int insertAll(List<T> list) throws Exception{
-        int count = 0;
-        int len = list.size();
-        int step = 50000;
-        Map<String, PropertyMapping> pm = op.mappings;
-        int maxPage = (len % step == 0) ? (len / step) : (len / step + 1);
-        for (int i = 1; i <= maxPage; i++){
-            Page<T> page = pagination(list, i, step);
-            String sql = "insert into " +getTableName() + "(" + op.allColumn + ") values";
-            StringBuffer valstr = new StringBuffer();
-            Object[] values = new Object[pm.size() * page.getRows().size()];
-            for (int j = 0; j < page.getRows().size(); j++) {
-                if (j > 0 && j < page.getRows().size()){
-                    valstr.append(",");
-                }
-                valstr.append("(");
-                int k = 0;
-                for (PropertyMapping propertyMapping : pm.values()) {
-                    values[(j * pm.size()) + k] = propertyMapping.getter.invoke(page.getRows().get(i));
-                    if(k > 0 && k < pm.size()){
-                        valstr.append(",");
-                    }
-                    valstr.append("?");
-                    k++;
-                }
-                valstr.append(")");
-            }
-            int result = jdbcTemplateWrite().update(sql + valstr.toString(), values);
-            count += result;
+        return insertAll(list, BatchMode.AUTO).getUpdateCount();
+    }
+
+    /**
+     * 批量插入，按估算的语句大小自动分批
+     * @param list
+     * @param mode 执行方式
+     * @return 每一批的执行结果
+     * @throws Exception
+     */
+    public BatchResult insertAll(List<T> list, BatchMode mode) throws Exception{
+        return insertAll(list.iterator(), mode);
+    }
+
+    public int insertAll(Iterator<T> iterator) throws Exception{
+        return insertAll(iterator, BatchMode.AUTO).getUpdateCount();
+    }
+
+    public int insertAll(Stream<T> stream) throws Exception{
+        return insertAll(stream.iterator(), BatchMode.AUTO).getUpdateCount();
+    }
+
+    /**
+     * 逐行读取并批量插入，只占用一批数据的缓冲区，适合数据量超出内存的导入
+     * @param iterator
+     * @param mode 执行方式
+     * @return 每一批的执行结果
+     * @throws Exception
+     */
+    public BatchResult insertAll(Iterator<T> iterator, BatchMode mode) throws Exception{
+        BatchInserter inserter = batchInserter("insert into ", mode);
+        while (iterator.hasNext()) {
+            inserter.add(iterator.next());
         }
-        return count;
+        return inserter.finish();
     }
 
     protected boolean replaceOne(T entity) throws Exception{
-        return this.doReplace(parse(entity));
+        return this.doReplace(entity);
     }
 
     protected int replaceAll(List<T> list) throws Exception{
-        int count = 0;
-        int len = list.size();
-        int step = 50000;
-        Map<String, PropertyMapping> pm = op.mappings;
-        int maxPage = (len % step == 0) ? (len / step) : (len / step + 1);
-        for (int i = 1; i <= maxPage; i++) {
-            Page<T> page = pagination(list, i, step);
-            String sql = "replace into " + getTableName() + "(" + op.allColumn + ") values ";
-            StringBuffer valstr = new StringBuffer();
-            Object[] values = new Object[pm.size() * page.getRows().size()];
-            for (int j = 0; j < page.getRows().size(); j++) {
-                if(j > 0 && j < page.getRows().size()){
-                    valstr.append(",");
-                }
-                valstr.append("(");
-                int k = 0;
-                for (PropertyMapping propertyMapping : pm.values()){
-                    values[(j * pm.size()) + k] = propertyMapping.getter.invoke(page.getRows().get(j));
-                    if(k > 0 && k < pm.size()){
-                        valstr.append(",");
-                    }
-                    valstr.append("?");
-                    k++;
-                }
-                valstr.append(")");
-            }
-            int result = jdbcTemplateWrite().update(sql + valstr.toString(), values);
-            count += result;
+        return replaceAll(list.iterator());
+    }
+
+    protected int replaceAll(Iterator<T> iterator) throws Exception{
+        BatchInserter inserter = batchInserter(getDialect().replaceInto(), BatchMode.AUTO);
+        while (iterator.hasNext()) {
+            inserter.add(iterator.next());
         }
-        return count;
+        return inserter.finish().getUpdateCount();
+    }
+
+    // 写入全部列的批量插入器
+    private BatchInserter batchInserter(String into, BatchMode mode) {
+        return new BatchInserter(this.jdbcTemplateWrite(), getDialect(), into, getTableName(), op, mode, BatchInserter.MAX_BATCH_ROWS);
     }
 
     /**
@@ -255,12 +679,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected boolean save(T entity) throws Exception{
-        PK pkValue = (PK)op.pkField.get(entity);
-        if(this.exists(pkValue)){
-            return this.doUpdate(pkValue, parse(entity)) > 0;
-        } else {
-            return this.doInsert(parse(entity));
-        }
+        return this.doUpsert(entity) > 0;
     }
 
     /**
@@ -272,15 +691,53 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     protected PK saveAndReturnId(T entity) throws Exception{
         Object o = op.pkField.get(entity);
         if(o == null){
-            return (PK)this.doInsertReturnKey(parse(entity));
+            return (PK)this.doInsertReturnKey(entity);
         }
-        PK pkValue = (PK)o;
-        if(this.exists(pkValue)){
-            this.doUpdate(pkValue, parse(entity));
-            return pkValue;
-        } else {
-            return (PK)this.doInsertReturnKey(parse(entity));
+        this.doUpsert(entity);
+        return (PK)o;
+    }
+
+    /**
+     * 批量保存，主键存在的记录更新，其余插入
+     * 非空列相同的记录使用同一条语句批量执行
+     * @param list
+     * @return 受影响的行数，MySQL中更新的记录计为2
+     * @throws Exception
+     */
+    protected int upsertAll(List<T> list) throws Exception {
+        int pkIndex = op.columnIndex(getPKColumn());
+        Map<BitSet, List<Object[]>> groups = new LinkedHashMap<BitSet, List<Object[]>>();
+        for (T entity : list) {
+            Object[] values = new Object[op.columns.length];
+            BitSet columns = op.readColumns(entity, values);
+            if(columns.isEmpty()){
+                continue;
+            }
+            List<Object[]> rows = groups.get(columns);
+            if(rows == null){
+                rows = new ArrayList<Object[]>();
+                groups.put(columns, rows);
+            }
+            rows.add(values);
+        }
+        int count = 0;
+        for (Map.Entry<BitSet, List<Object[]>> group : groups.entrySet()) {
+            final SqlTemplate template = upsertTemplate(group.getKey(), pkIndex);
+            final List<Object[]> rows = group.getValue();
+            int[] results = this.jdbcTemplateWrite().batchUpdate(template.sql, new BatchPreparedStatementSetter() {
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    template.bind(ps, rows.get(i), null);
+                }
+
+                public int getBatchSize() {
+                    return rows.size();
+                }
+            });
+            for (int result : results) {
+                count += result == Statement.SUCCESS_NO_INFO ? 1 : Math.max(result, 0);
+            }
         }
+        return count;
     }
 
     /**
@@ -290,7 +747,219 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public boolean update(T entity) throws Exception {
-        return this.doUpdate(op.pkField.get(entity), parse(entity)) > 0;
+        if(this.writeBehind(WriteBehindBuffer.Kind.UPDATE, entity)){
+            return true;
+        }
+        Object pkValue = op.pkField.get(entity);
+        DirtyTracker<T> tracker = this.dirtyTracker;
+        Object[] values = new Object[op.columns.length];
+        BitSet columns = tracker == null ? null : tracker.changedColumns(getTableName(), pkValue, entity, values);
+        if(columns == null){
+            columns = op.readColumns(entity, values);
+        } else if(columns.isEmpty()){
+            // 与加载时相比没有变化
+            return true;
+        }
+        boolean updated = this.doUpdate(pkValue, columns, values) > 0;
+        if(updated && tracker != null){
+            tracker.track(getTableName(), pkValue, entity);
+        }
+        return updated;
+    }
+
+    /**
+     * 批量更新
+     * 开启脏数据跟踪时只更新变化的列，否则更新非空列；更新列相同的实体按主键排序后使用同一条语句批量执行，
+     * 各组再按组内最小主键的顺序执行。
+     * 主键只在组内严格有序，不同组的主键区间交叉时，两个并发的批量更新仍可能以不同顺序加行锁；
+     * 需要严格按主键加锁时，应保证同一批实体的更新列相同
+     * @param list
+     * @return 与list顺序一致的更新记录数，没有需要更新的列时为0，驱动不返回行数时为Statement.SUCCESS_NO_INFO
+     * @throws Exception
+     */
+    public int[] updateAll(List<T> list) throws Exception {
+        final int[] counts = new int[list.size()];
+        final Object[] pkValues = new Object[list.size()];
+        final Object[][] rows = new Object[list.size()][];
+        DirtyTracker<T> tracker = this.dirtyTracker;
+        String pkName = this.getPKColumn();
+        int pkIndex = op.columnIndex(pkName);
+        Map<BitSet, List<Integer>> groups = new LinkedHashMap<BitSet, List<Integer>>();
+        for (int i = 0; i < rows.length; i++) {
+            T entity = list.get(i);
+            pkValues[i] = op.pkField.get(entity);
+            if(pkValues[i] == null){
+                continue;
+            }
+            rows[i] = new Object[op.columns.length];
+            BitSet columns = tracker == null ? null : tracker.changedColumns(getTableName(), pkValues[i], entity, rows[i]);
+            if(columns == null){
+                columns = op.readColumns(entity, rows[i]);
+            }
+            if(pkIndex >= 0){
+                columns.clear(pkIndex);
+            }
+            if(columns.isEmpty()){
+                continue;
+            }
+            List<Integer> indexes = groups.get(columns);
+            if(indexes == null){
+                indexes = new ArrayList<Integer>();
+                groups.put(columns, indexes);
+            }
+            indexes.add(i);
+        }
+        List<Map.Entry<BitSet, List<Integer>>> ordered = new ArrayList<Map.Entry<BitSet, List<Integer>>>(groups.entrySet());
+        for (Map.Entry<BitSet, List<Integer>> group : ordered) {
+            sortByPk(group.getValue(), pkValues);
+        }
+        if(!ordered.isEmpty() && pkValues[ordered.get(0).getValue().get(0)] instanceof Comparable){
+            Collections.sort(ordered, new Comparator<Map.Entry<BitSet, List<Integer>>>() {
+                public int compare(Map.Entry<BitSet, List<Integer>> a, Map.Entry<BitSet, List<Integer>> b) {
+                    return comparePk(pkValues[a.getValue().get(0)], pkValues[b.getValue().get(0)]);
+                }
+            });
+        }
+        for (Map.Entry<BitSet, List<Integer>> group : ordered) {
+            final SqlTemplate template = op.template(SqlTemplate.UPDATE, getTableName(), pkName, group.getKey());
+            List<Integer> indexes = group.getValue();
+            for (int from = 0; from < indexes.size(); from += BatchInserter.MAX_BATCH_ROWS) {
+                final List<Integer> chunk = indexes.subList(from, Math.min(from + BatchInserter.MAX_BATCH_ROWS, indexes.size()));
+                int[] results = this.jdbcTemplateWrite().batchUpdate(template.sql, new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        int index = chunk.get(i);
+                        template.bind(ps, rows[index], pkValues[index]);
+                    }
+
+                    public int getBatchSize() {
+                        return chunk.size();
+                    }
+                });
+                for (int i = 0; i < results.length; i++) {
+                    counts[chunk.get(i)] = results[i];
+                }
+            }
+        }
+        if(tracker != null){
+            for (int i = 0; i < counts.length; i++) {
+                if(counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO){
+                    tracker.track(getTableName(), pkValues[i], list.get(i));
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 按条件批量修改，不加载实体，只执行一条update语句
+     * @param queryRule 查询条件，不能为空，排序规则被忽略
+     * @param assignments 列名和新值
+     * @return 修改记录数
+     * @throws Exception
+     */
+    public int updateByRule(QueryRule queryRule, Map<String, Object> assignments) throws Exception {
+        if(assignments == null || assignments.isEmpty()){
+            return 0;
+        }
+        List<Object> params = new ArrayList<Object>();
+        List<PropertyMapping> binders = new ArrayList<PropertyMapping>();
+        StringBuilder sb = new StringBuilder("update ").append(getTableName()).append(" set ");
+        for (Map.Entry<String, Object> assignment : assignments.entrySet()) {
+            int index = op.columnIndex(assignment.getKey());
+            if(index < 0){
+                throw new IllegalArgumentException(assignment.getKey() + "不是" + op.entityClass.getName() + "的列");
+            }
+            if(!binders.isEmpty()){
+                sb.append(",");
+            }
+            sb.append(assignment.getKey()).append(" = ?");
+            binders.add(op.columns[index]);
+            params.add(assignment.getValue());
+        }
+        sb.append(" where ").append(ruleCondition(queryRule, params));
+        // 条件参数交给Spring按值推断类型
+        while (binders.size() < params.size()) {
+            binders.add(null);
+        }
+        int ret = this.jdbcTemplateWrite().update(sb.toString(),
+                new PropertyArgumentSetter(binders.toArray(new PropertyMapping[binders.size()]), params.toArray()));
+        clearSnapshots();
+        return ret;
+    }
+
+    /**
+     * 按条件批量删除，不加载实体，只执行一条delete语句
+     * @param queryRule 查询条件，不能为空，排序规则被忽略
+     * @return 删除记录数
+     * @throws Exception
+     */
+    public int deleteByRule(QueryRule queryRule) throws Exception {
+        List<Object> params = new ArrayList<Object>();
+        String sql = "delete from " + getTableName() + " where " + ruleCondition(queryRule, params);
+        int ret = this.jdbcTemplateWrite().update(sql, params.toArray());
+        clearSnapshots();
+        return ret;
+    }
+
+    /**
+     * 按条件分批删除，每次最多删除chunkSize条，直到没有满足条件的记录
+     * 每批是一条独立的语句，在事务外调用时每批单独提交，避免长时间持有锁和产生过大的undo日志
+     * @param queryRule 查询条件，不能为空，排序规则被忽略
+     * @param chunkSize 每批删除的最大条数
+     * @return 删除记录总数
+     * @throws Exception
+     */
+    public long deleteByRule(QueryRule queryRule, int chunkSize) throws Exception {
+        if(chunkSize <= 0){
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        List<Object> params = new ArrayList<Object>();
+        String sql = getDialect().limitRows("delete from " + getTableName() + " where " + ruleCondition(queryRule, params), chunkSize);
+        Object[] values = params.toArray();
+        long total = 0;
+        int ret;
+        do {
+            ret = this.jdbcTemplateWrite().update(sql, values);
+            total += ret;
+        } while (ret >= chunkSize);
+        clearSnapshots();
+        return total;
+    }
+
+    // 生成不含where关键字的条件，不允许没有条件的批量修改
+    private String ruleCondition(QueryRule queryRule, List<Object> params) {
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String conditionSql = plan.getConditionSql();
+        if(StringUtils.isBlank(conditionSql)){
+            throw new IllegalArgumentException("按条件修改或删除时条件不能为空");
+        }
+        return conditionSql;
+    }
+
+    // 按条件修改后无法确定哪些快照过期，全部删除
+    private void clearSnapshots() {
+        DirtyTracker<T> tracker = this.dirtyTracker;
+        if(tracker != null){
+            tracker.clear();
+        }
+    }
+
+    // 按主键排序，主键不可比较时保持原顺序
+    private static void sortByPk(List<Integer> indexes, final Object[] pkValues) {
+        if(!(pkValues[indexes.get(0)] instanceof Comparable)){
+            return;
+        }
+        Collections.sort(indexes, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                return comparePk(pkValues[a], pkValues[b]);
+            }
+        });
+    }
+
+    // 同一实体的主键类型相同，调用前已确认是Comparable
+    @SuppressWarnings("unchecked")
+    private static int comparePk(Object a, Object b) {
+        return ((Comparable<Object>) a).compareTo(b);
     }
 
     /**
@@ -322,7 +991,14 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     public boolean delete(T entity) throws Exception {
-        return this.doDelete(op.pkField.get(entity)) > 0;
+        if(this.writeBehind(WriteBehindBuffer.Kind.DELETE, entity)){
+            return true;
+        }
+        Object pkValue = op.pkField.get(entity);
+        if(this.dirtyTracker != null){
+            this.dirtyTracker.forget(getTableName(), pkValue);
+        }
+        return this.doDelete(pkValue) > 0;
     }
 
     /**
@@ -347,12 +1023,12 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
                 if(j > 0 && j < page.getRows().size()){
                     valstr.append(",");
                 }
-                values[j] = pm.get(pkName).getter.invoke(page.getRows().get(j));
+                values[j] = pm.get(pkName).get(page.getRows().get(j));
                 valstr.append("?");
             }
 
             String sql = "delete from " + getTableName() + " where " + pkName + " in (" + valstr.toString() + ")";
-            int result = jdbcTemplateWrite().update(sql, values);
+            int result = jdbcTemplateWrite().update(sql, new PropertyArgumentSetter(new PropertyMapping[]{pm.get(pkName)}, values));
             count += result;
         }
         return count;
@@ -420,14 +1096,14 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         Map<String, PropertyMapping> pm = op.mappings;
         for (Object element : pojoList) {
             Object key;
-            key = pm.get(idName).getter.invoke(element);
+            key = pm.get(idName).get(element);
             map.put(key, element);
         }
         for (Iterator<T> iterable = poList.iterator(); ((Iterator) iterable).hasNext();){
             T element = iterable.next();
             try {
 
-                Object key = pm.get(idName).getter.invoke(element);
+                Object key = pm.get(idName).get(element);
                 if (!map.containsKey(key)) {
                     delete(element);
                     iterable.remove();
@@ -441,7 +1117,7 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         T[] pojoArray = (T[])pojoList.toArray();
         for (T element : pojoArray) {
             try {
-                Object key = pm.get(idName).getter.invoke(element);
+                Object key = pm.get(idName).get(element);
                 if (key == null) {
                     poList.add(element);
                 }
@@ -454,35 +1130,361 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
 
     public Page<T> select(QueryRule queryRule, final int pageNo, final int pageSize) throws Exception {
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        Object[] values = builder.getValueArr();
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = "".equals(ws) ? ws :(" where " + ws);
+        return select(queryRule, pageNo, pageSize, pageMode);
+    }
+
+    /**
+     * 获取分页结果
+     * @param queryRule 查询条件
+     * @param pageNo 页码
+     * @param pageSize 每页条数
+     * @param mode 总数统计方式
+     * @return
+     * @throws Exception
+     */
+    public Page<T> select(QueryRule queryRule, final int pageNo, final int pageSize, PageMode mode) throws Exception {
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        Object[] values = params.toArray();
+        String whereSql = plan.getWhereSql();
         String countSql = "select count(1) from " + getTableName() + whereSql;
-        long count = (Long)this.jdbcTemplateReadOnly().queryForMap(countSql, values).get("count(1)");
-        if (count == 0){
-            return new Page<T>();
+        String sql = "select " + op.allColumn + " from " + getTableName() + whereSql + plan.getOrderSql();
+        long start = (long)(pageNo - 1) * pageSize;
+        return pageQuery(countSql, sql, rowMapper(), values, start, pageSize, mode);
+    }
+
+    /**
+     * 游标分页查询，按上一页最后一行的排序键定位，不使用limit偏移量
+     * 排序键为QueryRule中的排序列加上主键，排序列可以为null
+     * @param queryRule 查询条件
+     * @param token 上一页返回的游标，查询第一页时为null
+     * @param pageSize 每页条数
+     * @return
+     * @throws Exception
+     */
+    public KeysetPage<T> selectByKeyset(QueryRule queryRule, String token, int pageSize) throws Exception {
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        KeysetCursor cursor = KeysetCursor.of(op, queryRule, getPKColumn(), getDialect().nullsFirst());
+        String conditionSql = plan.getConditionSql();
+        String sql;
+        SqlAssembler assembler = SqlAssembler.open();
+        try {
+            StringBuilder sb = assembler.head;
+            sb.append("select ").append(op.allColumn).append(" from ").append(getTableName());
+            if(!StringUtils.isEmpty(token)){
+                sb.append(" where ");
+                if(!StringUtils.isEmpty(conditionSql)){
+                    sb.append("(").append(conditionSql).append(") and ");
+                }
+                cursor.appendSeek(sb, cursor.decode(token), params);
+            } else if(!StringUtils.isEmpty(conditionSql)){
+                sb.append(" where ").append(conditionSql);
+            }
+            cursor.appendOrder(sb);
+            sql = assembler.result();
+        } finally {
+            assembler.close();
         }
-        long start = (pageNo - 1) * pageSize;
+        // 多查一条判断是否还有下一页
+        sql = getDialect().pageSql(sql, 0, pageSize + 1);
+        List<T> list = this.jdbcTemplateReadOnly().query(sql, rowMapper(), params.toArray());
+        String nextToken = null;
+        if(list.size() > pageSize){
+            list = new ArrayList<T>(list.subList(0, pageSize));
+            nextToken = cursor.encode(cursor.keyValues(list.get(pageSize - 1)));
+        }
+        return new KeysetPage<T>(pageSize, list, nextToken);
+    }
 
-        String orderSql = builder.getOrderSql();
-        orderSql = (StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql));
-        String sql = "select " + op.allColumn + " from " + getTableName() + whereSql + orderSql + " limit " + start + "," + pageSize;
-        List<T> list = (List<T>)this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper, values);
+    public List<T> select(QueryRule queryRule) throws Exception{
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String sql = "select " +op.allColumn + " from " + getTableName() + plan.getWhereSql() + plan.getOrderSql();
+        Object[] values = params.toArray();
+        return (List<T>)this.jdbcTemplateReadOnly().query(sql, rowMapper(), values);
+    }
 
-        return new Page<T>(pageSize, start, list, count);
+    /**
+     * 流式查询，结果集逐行读取并转换为实体，内存占用与结果集大小无关
+     * 不记录脏数据快照；使用完必须关闭，建议放在try-with-resources中
+     * @param queryRule
+     * @return
+     * @throws Exception
+     */
+    public Stream<T> stream(QueryRule queryRule) throws Exception {
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String sql = "select " + op.allColumn + " from " + getTableName() + plan.getWhereSql() + plan.getOrderSql();
+        return streamQuery(sql, op.rowMapper, params.toArray());
     }
 
-    public List<T> select(QueryRule queryRule) throws Exception{
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = "".equals(ws) ? ws : (" where " + ws);
-        String sql = "select " +op.allColumn + " from " + getTableName() + whereSql;
-        Object[] values = builder.getValueArr();
-        String orderSql = builder.getOrderSql();
-        orderSql = StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql);
-        sql += orderSql;
-        return (List<T>)this.jdbcTemplateReadOnly().query(sql, this.op.rowMapper, values);
+    /**
+     * 根据SQL流式查询，使用完必须关闭
+     * @param sql
+     * @param args
+     * @return
+     * @throws Exception
+     */
+    public Stream<Map<String, Object>> streamBySql(String sql, Object... args) throws Exception {
+        return streamQuery(sql, new ColumnMapRowMapper(), args);
+    }
+
+    private <E> Stream<E> streamQuery(String sql, RowMapper<E> rowMapper, Object[] args) {
+        log.debug(sql);
+        return ResultSetSpliterator.open(this.jdbcTemplateReadOnly(), sql, args, streamFetchSize(), rowMapper);
+    }
+
+    /**
+     * 扫描查询结果，所有行复用同一个实体对象，适合只读取少量属性的大批量统计
+     * 结果集逐行读取，回调中不能保存实体的引用，需要的值应立即复制出来
+     * @param queryRule
+     * @param visitor 每行调用一次，返回false时停止
+     * @return 访问的行数
+     * @throws Exception
+     */
+    public long scan(QueryRule queryRule, RowVisitor<T> visitor) throws Exception {
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String sql = "select " + op.allColumn + " from " + getTableName() + plan.getWhereSql() + plan.getOrderSql();
+        return scanQuery(sql, params.toArray(), visitor);
+    }
+
+    private long scanQuery(final String sql, Object[] args, RowVisitor<T> visitor) throws Exception {
+        final int fetchSize = streamFetchSize();
+        log.debug(sql);
+        try {
+            return this.jdbcTemplateReadOnly().query(new PreparedStatementCreator() {
+                public PreparedStatement createPreparedStatement(Connection con) throws SQLException {
+                    PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                    ps.setFetchSize(fetchSize);
+                    return ps;
+                }
+            }, new ArgumentPreparedStatementSetter(args), new FlyweightScanner<T>(op, visitor));
+        } catch (FlyweightScanner.VisitorException e){
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * 按主键范围分段并行扫描，每段在线程池中使用各自的连接执行
+     * 根据符合条件的主键最小值和最大值等分，主键必须是数字
+     * @param queryRule 查询条件，排序只在段内有效
+     * @param partitions 分段数
+     * @param visitor 会被多个线程同时调用，必须线程安全；每个线程复用各自的实体对象；返回false时停止所有分段
+     * @return 访问的行数
+     * @throws Exception
+     */
+    public long parallelScan(QueryRule queryRule, int partitions, RowVisitor<T> visitor) throws Exception {
+        return parallelScan(queryRule, pkSplitPoints(queryRule, partitions), visitor);
+    }
+
+    /**
+     * 按指定的主键分段点并行扫描
+     * n个分段点分成n+1段：pk < p0、p0 <= pk < p1、...、pk >= pn-1
+     * @param queryRule 查询条件，排序只在段内有效
+     * @param splitPoints 严格升序的主键分段点
+     * @param visitor 会被多个线程同时调用，必须线程安全；返回false时停止所有分段
+     * @throws IllegalArgumentException 分段点为null或不是严格升序
+     * @return 访问的行数
+     * @throws Exception
+     */
+    public long parallelScan(QueryRule queryRule, List<?> splitPoints, final RowVisitor<T> visitor) throws Exception {
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final AtomicLong visited = new AtomicLong();
+        final RowVisitor<T> guarded = new RowVisitor<T>() {
+            public boolean visit(T row, long rowNum) throws Exception {
+                if(stopped.get()){
+                    return false;
+                }
+                visited.incrementAndGet();
+                try {
+                    if(!visitor.visit(row, rowNum)){
+                        stopped.set(true);
+                        return false;
+                    }
+                    return true;
+                } catch (Exception e){
+                    stopped.set(true);
+                    throw e;
+                }
+            }
+        };
+        forEachPartition(queryRule, splitPoints, new PartitionQuery<Long>() {
+            public Long run(String sql, Object[] args) throws Exception {
+                return scanQuery(sql, args, guarded);
+            }
+        });
+        return visited.get();
+    }
+
+    /**
+     * 按主键范围分段并行查询，结果按分段顺序合并
+     * @param queryRule 查询条件，排序只在段内有效
+     * @param partitions 分段数
+     * @return
+     * @throws Exception
+     */
+    public List<T> selectParallel(QueryRule queryRule, int partitions) throws Exception {
+        final RowMapper<T> rowMapper = rowMapper();
+        List<List<T>> parts = forEachPartition(queryRule, pkSplitPoints(queryRule, partitions), new PartitionQuery<List<T>>() {
+            public List<T> run(String sql, Object[] args) throws Exception {
+                log.debug(sql);
+                return jdbcTemplateReadOnly().query(sql, rowMapper, args);
+            }
+        });
+        int size = 0;
+        for (List<T> part : parts) {
+            size += part.size();
+        }
+        List<T> list = new ArrayList<T>(size);
+        for (List<T> part : parts) {
+            list.addAll(part);
+        }
+        return list;
+    }
+
+    // 分段执行的查询
+    private interface PartitionQuery<V> {
+        V run(String sql, Object[] args) throws Exception;
+    }
+
+    /**
+     * 为每个主键分段生成查询并提交到扫描线程池，等待全部完成
+     * @return 各分段的结果，顺序与分段一致
+     */
+    private <V> List<V> forEachPartition(QueryRule queryRule, List<?> splitPoints, final PartitionQuery<V> query) throws Exception {
+        checkSplitPoints(splitPoints);
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String condition = plan.getConditionSql();
+        String pkName = getPKColumn();
+        ExecutorService executor = scanExecutor();
+        List<Future<V>> futures = new ArrayList<Future<V>>(splitPoints.size() + 1);
+        try {
+            for (int i = 0; i <= splitPoints.size(); i++) {
+                Object lower = i == 0 ? null : splitPoints.get(i - 1);
+                Object upper = i == splitPoints.size() ? null : splitPoints.get(i);
+                StringBuilder sb = new StringBuilder("select ").append(op.allColumn).append(" from ").append(getTableName());
+                List<Object> args = new ArrayList<Object>(params.size() + 2);
+                String and = " where ";
+                if(lower != null){
+                    sb.append(and).append(pkName).append(" >= ?");
+                    args.add(lower);
+                    and = " and ";
+                }
+                if(upper != null){
+                    sb.append(and).append(pkName).append(" < ?");
+                    args.add(upper);
+                    and = " and ";
+                }
+                if(StringUtils.isNotBlank(condition)){
+                    sb.append(and).append("(").append(condition).append(")");
+                }
+                sb.append(plan.getOrderSql());
+                args.addAll(params);
+                final String sql = sb.toString();
+                final Object[] values = args.toArray();
+                futures.add(executor.submit(RoutingContext.wrap(new Callable<V>() {
+                    public V call() throws Exception {
+                        return query.run(sql, values);
+                    }
+                })));
+            }
+            List<V> results = new ArrayList<V>(futures.size());
+            for (Future<V> future : futures) {
+                results.add(await(future));
+            }
+            return results;
+        } finally {
+            // 出错时取消还没开始的分段，进行中的分段执行完后结束
+            for (Future<V> future : futures) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    // 分段点必须严格升序，否则分段会重叠或遗漏
+    private static void checkSplitPoints(List<?> splitPoints) {
+        for (int i = 0; i < splitPoints.size(); i++) {
+            Object point = splitPoints.get(i);
+            if(!(point instanceof Comparable)){
+                throw new IllegalArgumentException("分段点不能为null且必须可比较: " + point);
+            }
+            if(i > 0 && comparePk(splitPoints.get(i - 1), point) >= 0){
+                throw new IllegalArgumentException("分段点必须严格升序: " + splitPoints);
+            }
+        }
+    }
+
+    /**
+     * 按符合条件的主键最小值和最大值等分出分段点
+     * @return 没有数据时为空，只分一段
+     */
+    private List<Object> pkSplitPoints(QueryRule queryRule, int partitions) throws Exception {
+        if(partitions <= 0){
+            throw new IllegalArgumentException("partitions必须大于0");
+        }
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        String pkName = getPKColumn();
+        String sql = "select min(" + pkName + "), max(" + pkName + ") from " + getTableName() + plan.getWhereSql();
+        Object[] range = this.jdbcTemplateReadOnly().queryForObject(sql, params.toArray(), new RowMapper<Object[]>() {
+            public Object[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+                return new Object[]{rs.getObject(1), rs.getObject(2)};
+            }
+        });
+        List<Object> points = new ArrayList<Object>(partitions);
+        if(range[0] == null){
+            return points;
+        }
+        if(!(range[0] instanceof Number) || !(range[1] instanceof Number)){
+            throw new IllegalArgumentException(getTableName() + "的主键不是数字，需要指定分段点");
+        }
+        // 主键范围可能超出long，用BigInteger计算避免溢出
+        BigInteger min = BigInteger.valueOf(((Number) range[0]).longValue());
+        BigInteger max = BigInteger.valueOf(((Number) range[1]).longValue());
+        BigInteger step = max.subtract(min).divide(BigInteger.valueOf(partitions)).add(BigInteger.ONE);
+        for (BigInteger point = min.add(step); point.compareTo(max) <= 0 && points.size() < partitions - 1; point = point.add(step)) {
+            points.add(point.longValue());
+        }
+        return points;
+    }
+
+    /**
+     * 设置并行扫描使用的线程池，同时执行的分段数不应超过连接池大小
+     * @param scanExecutor
+     */
+    public void setScanExecutor(ExecutorService scanExecutor) {
+        this.scanExecutor = scanExecutor;
+    }
+
+    private ExecutorService scanExecutor() {
+        ExecutorService executor = this.scanExecutor;
+        return executor != null ? executor : ScanExecutorHolder.executor;
+    }
+
+    // 共享的并行扫描线程池，队列满时由调用线程自己执行分段
+    private static class ScanExecutorHolder {
+        static final ExecutorService executor;
+        static {
+            final AtomicInteger index = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * 16), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "pk-scan-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+    }
+
+    private int streamFetchSize() {
+        return this.streamFetchSize != 0 ? this.streamFetchSize : getDialect().streamFetchSize();
     }
 
     protected  List<Map<String, Object>> selectBySql(String sql, Map<String, ?>param) throws Exception{
@@ -531,32 +1533,126 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     }
 
     protected Page<Map<String,Object>> selectBySqlToPage(String sql, Map<String,?> param, final int pageNo, final int pageSize) throws Exception {
+        return selectBySqlToPage(sql, new Object[]{param}, pageNo, pageSize);
+    }
+
+    public Page<Map<String,Object>> selectBySqlToPage(String sql, Object [] param, final int pageNo, final int pageSize) throws Exception {
+        return selectBySqlToPage(sql, param, pageNo, pageSize, pageMode);
+    }
+
+    public Page<Map<String,Object>> selectBySqlToPage(String sql, Object [] param, final int pageNo, final int pageSize, PageMode mode) throws Exception {
         String countSql = "select count(1) from (" + sql + ") a";
-        long count = (Long) this.jdbcTemplateReadOnly().queryForMap(countSql,param).get("count(1)");
+        long start = (long)(pageNo - 1) * pageSize;
+        log.debug(sql);
+        return pageQuery(countSql, sql, new ColumnMapRowMapper(), param, start, pageSize, mode);
+    }
 
-        if (count == 0) {
-            return new Page<Map<String,Object>>();
+    /**
+     * 按指定方式统计总数并查询一页数据
+     * @param countSql 查询总数的语句
+     * @param sql 查询数据的语句，不含limit
+     * @param rowMapper
+     * @param args 参数
+     * @param start 起始位置
+     * @param pageSize 每页条数
+     * @param mode 总数统计方式
+     * @return
+     * @throws Exception
+     */
+    private <E> Page<E> pageQuery(String countSql, String sql, RowMapper<E> rowMapper, Object[] args,
+                                  long start, int pageSize, PageMode mode) throws Exception {
+        switch (mode){
+            case NO_COUNT: {
+                List<E> list = this.jdbcTemplateReadOnly().query(getDialect().pageSql(sql, start, pageSize + 1), rowMapper, args);
+                boolean hasNext = list.size() > pageSize;
+                if(hasNext){
+                    list = new ArrayList<E>(list.subList(0, pageSize));
+                }
+                return new Page<E>(pageSize, start, list, hasNext);
+            }
+            case CONCURRENT_COUNT: {
+                Future<Long> count = countExecutor().submit(countTask(countSql, args));
+                List<E> list;
+                try {
+                    list = this.jdbcTemplateReadOnly().query(getDialect().pageSql(sql, start, pageSize), rowMapper, args);
+                } catch (RuntimeException e){
+                    count.cancel(true);
+                    throw e;
+                }
+                return new Page<E>(pageSize, start, list, await(count));
+            }
+            case CACHED_COUNT: {
+                String dataSource = RoutingContext.current();
+                Long count = countCache.get(dataSource, countSql, args);
+                Page.TotalType totalType = Page.TotalType.ESTIMATED;
+                if(count == null){
+                    count = queryCount(countSql, args);
+                    countCache.put(dataSource, countSql, args, count);
+                    totalType = Page.TotalType.EXACT;
+                }
+                List<E> list = count == 0 ? new ArrayList<E>()
+                        : this.jdbcTemplateReadOnly().query(getDialect().pageSql(sql, start, pageSize), rowMapper, args);
+                return new Page<E>(pageSize, start, list, count, totalType);
+            }
+            default: {
+                long count = queryCount(countSql, args);
+                if (count == 0){
+                    return new Page<E>();
+                }
+                List<E> list = this.jdbcTemplateReadOnly().query(getDialect().pageSql(sql, start, pageSize), rowMapper, args);
+                return new Page<E>(pageSize, start, list, count);
+            }
         }
-        long start = (pageNo - 1) * pageSize;
-        // 有数据的情况下，继续查询
-        sql = sql + " limit " + start + "," + pageSize;
-        List<Map<String,Object>> list = (List<Map<String,Object>>) this.jdbcTemplateReadOnly().queryForList(sql, param);
+    }
 
-        return new Page<Map<String,Object>>(pageSize, start, list, count);
+    private long queryCount(String countSql, Object[] args) {
+        Long count = this.jdbcTemplateReadOnly().queryForObject(countSql, Long.class, args);
+        return count == null ? 0 : count;
     }
 
-    public Page<Map<String,Object>> selectBySqlToPage(String sql, Object [] param, final int pageNo, final int pageSize) throws Exception {
-        String countSql = "select count(1) from (" + sql + ") a";
+    // 在其他线程查询总数，沿用当前线程的数据源
+    private Callable<Long> countTask(final String countSql, final Object[] args) {
+        return RoutingContext.wrap(new Callable<Long>() {
+            public Long call() throws Exception {
+                return queryCount(countSql, args);
+            }
+        });
+    }
 
-        long count = (Long) this.jdbcTemplateReadOnly().queryForMap(countSql,param).get("count(1)");
-        if (count == 0) {
-            return new Page<Map<String,Object>>();
+    private static <V> V await(Future<V> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e){
+            Throwable cause = e.getCause();
+            if(cause instanceof Exception){
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private ExecutorService countExecutor() {
+        ExecutorService executor = this.countExecutor;
+        return executor != null ? executor : CountExecutorHolder.executor;
+    }
+
+    // 共享的总数查询线程池，队列满时由调用线程自己查询
+    private static class CountExecutorHolder {
+        static final ExecutorService executor;
+        static {
+            final AtomicInteger index = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(threads * 64), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "page-count-" + index.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
         }
-        long start = (pageNo - 1) * pageSize;
-        sql = sql + " limit " + start + "," + pageSize;
-        List<Map<String,Object>> list = (List<Map<String,Object>>) this.jdbcTemplateReadOnly().queryForList(sql, param);
-        log.debug(sql);
-        return new Page<Map<String,Object>>(pageSize, start, list,count);
     }
 
     protected T selectUnique(Map<String, Object> properties) throws Exception {
@@ -586,12 +1682,11 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
      * @throws Exception
      */
     protected long getCount(QueryRule queryRule) throws Exception{
-        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
-        Object[] values = builder.getValueArr();
-        String ws = removeFirstAnd(builder.getWhereSql());
-        String whereSql = "".equals(ws) ? ws : (" where " + ws);
-        String countSql = "select count(1) from " + getTableName() + whereSql;
-        return (Long)this.jdbcTemplateReadOnly().queryForMap(countSql, values).get("count(1)");
+        List<Object> params = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(queryRule, params);
+        Object[] values = params.toArray();
+        String countSql = "select count(1) from " + getTableName() + plan.getWhereSql();
+        return queryCount(countSql, values);
     }
 
     protected T getMax(String propertyName) throws Exception{
@@ -604,13 +1699,6 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         return result.getRows().get(0);
     }
 
-    private String removeFirstAnd(String whereSql) {
-        if (StringUtils.isEmpty(whereSql)){
-            return whereSql;
-        }
-        return whereSql.trim().toLowerCase().replaceAll("\\s*and", "") + " ";
-    }
-
     // 根据当前list进行相应的分页返回
     protected Page<T> pagination(List<T> objList, int pageNo, int pageSize) throws Exception {
         List<T> objectArray = new ArrayList<T>(0);
@@ -663,20 +1751,20 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
 
 
-    private Serializable doInsertReturnKey(Map<String,Object> params) {
-        final List<Object> values = new ArrayList<Object>();
-        final String sql = makeSimpleInsertSql(getTableName(), params, values);
+    private Serializable doInsertReturnKey(T entity) throws Exception {
+        final Object[] values = new Object[op.columns.length];
+        BitSet columns = op.readColumns(entity, values);
+        final SqlTemplate template = op.template(SqlTemplate.INSERT, getTableName(), null, columns);
+        final Dialect dialect = getDialect();
+        final String pkName = getPKColumn();
         KeyHolder keyHolder = new GeneratedKeyHolder();
-        final JdbcTemplate jdbcTemplate = new JdbcTemplate(getDataSourceWrite());
 
         try {
 
-            jdbcTemplate.update(new PreparedStatementCreator() {
+            this.jdbcTemplateWrite().update(new PreparedStatementCreator() {
                 public PreparedStatement createPreparedStatement(Connection connection) throws SQLException {
-                    PreparedStatement ps = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-                    for (int i = 0; i < values.size(); i++) {
-                        ps.setObject(i + 1, values.get(i) == null ? null : values.get(i));
-                    }
+                    PreparedStatement ps = dialect.prepareReturningKeys(connection, template.sql, pkName);
+                    template.bind(ps, values, null);
                     return ps;
                 }
             }, keyHolder);
@@ -707,32 +1795,72 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
         }
     }
 
-    // 插入
-    private boolean doInsert(Map<String, Object> params) {
-        String sql = this.makeSimpleInsertSql(this.getTableName(), params);
-        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
+    /**
+     * 插入或更新实体的全部非空列，一次执行完成
+     * @param entity
+     * @return 受影响的行数
+     * @throws Exception
+     */
+    private int doUpsert(T entity) throws Exception {
+        Object[] values = new Object[op.columns.length];
+        BitSet columns = op.readColumns(entity, values);
+        if(columns.isEmpty()){
+            return 0;
+        }
+        SqlTemplate template = upsertTemplate(columns, op.columnIndex(getPKColumn()));
+        return this.jdbcTemplateWrite().update(template.sql, template.setter(values, null));
+    }
+
+    // 主键为空时没有冲突的可能，直接插入
+    private SqlTemplate upsertTemplate(BitSet columns, int pkIndex) {
+        if(pkIndex < 0 || !columns.get(pkIndex)){
+            return op.template(SqlTemplate.INSERT, getTableName(), null, columns);
+        }
+        return op.template(SqlTemplate.UPSERT, getDialect(), getTableName(), getPKColumn(), columns);
+    }
+
+    // 插入实体的非空列
+    private boolean doInsert(T entity) throws Exception {
+        return this.doWrite(SqlTemplate.INSERT, entity);
+    }
+
+    private boolean doReplace(T entity) throws Exception {
+        return this.doWrite(SqlTemplate.REPLACE, entity);
+    }
+
+    private boolean doWrite(int kind, T entity) throws Exception {
+        Object[] values = new Object[op.columns.length];
+        BitSet columns = op.readColumns(entity, values);
+        if(columns.isEmpty()){
+            return false;
+        }
+        Dialect dialect = kind == SqlTemplate.REPLACE ? getDialect() : null;
+        SqlTemplate template = op.template(kind, dialect, getTableName(), null, columns);
+        int ret = this.jdbcTemplateWrite().update(template.sql, template.setter(values, null));
         return ret > 0;
     }
 
     /**
-     * 更新实例对象，返回删除记录数
+     * 更新实例对象，返回更新记录数
      * @param pkValue
-     * @param params
+     * @param columns 需要更新的列，主键列会被排除
+     * @param values 实体全部列值
      * @return
      */
-    private int doUpdate(Object pkValue, Map<String, Object> params) {
-        String sql = this.makeDefaultSimpleUpdateSql(pkValue, params);
-        params.put(this.getPKColumn(), pkValue);
-        int ret=this.jdbcTemplateWrite().update(sql, params.values().toArray());
+    private int doUpdate(Object pkValue, BitSet columns, Object[] values) {
+        String pkName = this.getPKColumn();
+        int pkIndex = op.columnIndex(pkName);
+        if(pkIndex >= 0){
+            columns.clear(pkIndex);
+        }
+        if(columns.isEmpty()){
+            return 0;
+        }
+        SqlTemplate template = op.template(SqlTemplate.UPDATE, getTableName(), pkName, columns);
+        int ret=this.jdbcTemplateWrite().update(template.sql, template.setter(values, pkValue));
         return ret;
     }
 
-    private boolean doReplace(Map<String, Object> params) {
-        String sql = this.makeSimpleReplaceSql(this.getTableName(), params);
-        int ret = this.jdbcTemplateWrite().update(sql, params.values().toArray());
-        return ret > 0;
-    }
-
     /**
      * 删除默认实例对象，返回删除记录数
      * @param pkValue
@@ -743,9 +1871,8 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
     }
 
     private int doDelete(String tableName, String pkName, Object pkValue) {
-        StringBuffer sb = new StringBuffer();
-        sb.append("delete from ").append(tableName).append(" where ").append(pkName).append(" = ?");
-        int ret = this.jdbcTemplateWrite().update(sb.toString(), pkValue);
+        SqlTemplate template = op.template(SqlTemplate.DELETE_BY_PK, tableName, pkName, NO_COLUMNS);
+        int ret = this.jdbcTemplateWrite().update(template.sql, template.setter(NO_VALUES, pkValue));
         return ret;
     }
 
@@ -758,199 +1885,15 @@ public abstract class BaseDaoSupport<T extends Serializable, PK extends Serializ
 
     private <T> Page simplePageQueryByStart(String sql, RowMapper<T> rowMapper, Map<String, ?> args, long start, long pageSize) {
         // 查询总数
-        String countSql = "select count(1) " + removeSelect(removeOrders(sql));
+        String countSql = SqlAssembler.countSql(sql);
 
-        long count = (Long)this.jdbcTemplateReadOnly().queryForMap(countSql, args).get("count(1)");
+        long count = queryCount(countSql, new Object[]{args});
         if (count == 0){
             return new Page();
         }
-        sql = sql + " limit " + start + "," + pageSize;
+        sql = getDialect().pageSql(sql, start, (int)pageSize);
         List<T> list = this.jdbcTemplateReadOnly().query(sql, rowMapper, args);
         return new Page((int)pageSize, start, list, count);
     }
 
-    private String removeSelect(String sql) {
-        int beginPos = sql.toLowerCase().indexOf("from");
-        return sql.substring(beginPos);
-    }
-
-    private String removeOrders(String sql) {
-        Pattern pattern = Pattern.compile("order\\s*by[\\w|\\W|\\s|\\S]*", Pattern.CASE_INSENSITIVE);
-        Matcher m = pattern.matcher(sql);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            m.appendReplacement(sb, "");
-
-        }
-        m.appendTail(sb);
-        return sb.toString();
-    }
-
-
-    // 生成对象insert语句，简化sql拼接
-    private String makeSimpleInsertSql(String tableName, Map<String, Object> params, List<Object> values) {
-        if(StringUtils.isEmpty(tableName) || params == null || params.isEmpty()){
-            return "";
-        }
-        StringBuffer sb = new StringBuffer();
-        sb.append("insert into ").append(tableName);
-
-        StringBuffer sbKey = new StringBuffer();
-        StringBuffer sbValue = new StringBuffer();
-
-        sbKey.append("(");
-        sbValue.append("(");
-
-        // 添加参数
-        Set<String> set = params.keySet();
-        int index = 0;
-        for (String key : set) {
-            sbKey.append(key);
-            sbValue.append(" ?");
-            if(index != set.size() - 1){
-                sbKey.append(",");
-                sbValue.append(",");
-            }
-            index++;
-            values.add(params.get(key));
-        }
-        sbKey.append(")");
-        sbValue.append(")");
-
-        sb.append(sbKey).append("VALUES").append(sbValue);
-
-        return sb.toString();
-    }
-
-    // 生成对象Insert语句，简化sql拼接
-    private String makeSimpleInsertSql(String tableName, Map<String,Object> params) {
-        if(StringUtils.isEmpty(tableName) || params == null || params.isEmpty()){
-            return "";
-        }
-        StringBuffer sb = new StringBuffer();
-        sb.append("insert into ").append(tableName);
-
-        StringBuffer sbKey = new StringBuffer();
-        StringBuffer sbValue = new StringBuffer();
-
-        sbKey.append("(");
-        sbValue.append("(");
-
-        Set<String> set = params.keySet();
-        int index = 0;
-        for (String key : set) {
-            sbKey.append(key);
-            sbValue.append(" ?");
-            if(index != set.size() - 1){
-                sbKey.append(",");
-                sbValue.append(",");
-            }
-            index++;
-        }
-        sbKey.append(")");
-        sbValue.append(")");
-
-        sb.append(sbKey).append("VALUES").append(sbValue);
-
-        return sb.toString();
-    }
-
-    // 生成默认的对象update语句，简化sql拼接
-    private String makeDefaultSimpleUpdateSql(Object pkValue, Map<String, Object> params) {
-        return this.makeSimpleUpdateSql(getTableName(), getPKColumn(), pkValue, params);
-    }
-
-    // 生成默认的对象update语句，简化sql拼接
-    private String makeSimpleUpdateSql(String tableName, String pkName, Object pkValue, Map<String,Object> params) {
-        if (StringUtils.isEmpty(tableName) || params == null || params.isEmpty()){
-            return "";
-        }
-
-        StringBuffer sb = new StringBuffer();
-        sb.append("update ").append(tableName).append(" set ");
-
-        Set<String> set = params.keySet();
-        int index = 0;
-        for (String key : set) {
-            sb.append(key).append(" = ?");
-            if(index != set.size() - 1){
-                sb.append(",");
-            }
-            index++;
-        }
-        sb.append(" where ").append(pkName).append(" = ?");
-        params.put("where_" + pkName, params.get(pkName));
-
-        return sb.toString();
-    }
-
-    // 生成对象replace语句，简化sql拼接
-    private String makeSimpleReplaceSql(String tableName, Map<String,Object> params) {
-        if (StringUtils.isEmpty(tableName) || params == null || params.isEmpty()){
-            return "";
-        }
-        StringBuffer sb = new StringBuffer();
-        sb.append("replace into ").append(tableName);
-
-        StringBuffer sbKey = new StringBuffer();
-        StringBuffer sbValue = new StringBuffer();
-
-        sbKey.append("(");
-        sbValue.append("(");
-
-        Set<String> set = params.keySet();
-        int index = 0;
-        for (String key : set) {
-            sbKey.append(key);
-            sbValue.append(" :").append(key);
-            if(index != set.size() - 1){
-                sbKey.append(",");
-                sbValue.append(",");
-            }
-            index++;
-        }
-        sbKey.append(")");
-        sbValue.append(")");
-
-        sb.append(sbKey).append("VALUES").append(sbValue);
-
-        return sb.toString();
-
-    }
-
-    // 生成对象replace语句，简化sql拼接
-    private String makeSimpleReplaceSql(String tableName, Map<String,Object> params, List<Object> values) {
-        if (StringUtils.isEmpty(tableName) || params == null || params.isEmpty()){
-            return "";
-        }
-        StringBuffer sb = new StringBuffer();
-        sb.append("replace into ").append(tableName);
-
-        StringBuffer sbKey = new StringBuffer();
-        StringBuffer sbValue = new StringBuffer();
-
-        sbKey.append("(");
-        sbValue.append("(");
-
-        Set<String> set = params.keySet();
-        int index = 0;
-        for (String key : set) {
-            sbKey.append(key);
-            sbValue.append(" ?");
-            if(index != set.size() - 1){
-                sbKey.append(",");
-                sbValue.append(",");
-            }
-            index++;
-            values.add(params.get(key));
-        }
-        sbKey.append(")");
-        sbValue.append(")");
-
-        sb.append(sbKey).append("VALUES").append(sbValue);
-
-        return sb.toString();
-    }
-
-
 }
@@ -0,0 +1,188 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 批量插入引擎
+ * 实体的全部列值依次读入固定大小的缓冲区，缓冲区满或估算的语句大小超过方言上限时提交一批，
+ * 提交后缓冲区清空复用，占用的内存与总行数无关
+ */
+final class BatchInserter {
+    private static final Logger log = Logger.getLogger(BatchInserter.class);
+
+    // 每批最多的行数
+    static final int MAX_BATCH_ROWS = 10000;
+    // 一条语句最多的参数个数（MySQL预编译语句的上限）
+    private static final int MAX_PARAMETERS = 65535;
+    // 估算大小与上限之间留出的余量
+    private static final double PACKET_USAGE = 0.8;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PropertyMapping[] columns;
+    private final boolean multiValues;
+    // insert into t(a,b) values
+    private final String head;
+    // (?,?)
+    private final String placeholders;
+    private final long maxBytes;
+    private final int maxRows;
+    private final Object[] buffer;
+
+    private int rows;
+    private long bytes;
+    private long offset;
+    private final BatchResult result = new BatchResult();
+
+    // 上一次生成的多行语句，相同行数时复用
+    private int lastRows;
+    private String lastSql;
+
+    /**
+     * @param jdbcTemplate
+     * @param dialect 方言
+     * @param into 语句开头，如"insert into "
+     * @param tableName 表名
+     * @param op
+     * @param mode 执行方式
+     * @param batchRows 每批最多的行数，不超过MAX_BATCH_ROWS
+     */
+    BatchInserter(JdbcTemplate jdbcTemplate, Dialect dialect, String into, String tableName,
+                  EntityOperation<?> op, BatchMode mode, int batchRows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.columns = op.columns;
+        this.multiValues = mode == BatchMode.MULTI_VALUES || (mode == BatchMode.AUTO && !dialect.preferJdbcBatch());
+        StringBuilder sb = new StringBuilder(into).append(tableName).append("(");
+        Dialects.appendColumns(sb, op.columnNames);
+        this.head = sb.append(") values ").toString();
+        sb.setLength(0);
+        Dialects.appendPlaceholders(sb.append("("), columns.length);
+        this.placeholders = sb.append(")").toString();
+        this.maxBytes = (long) (dialect.maxStatementBytes() * PACKET_USAGE);
+        int limit = Math.min(batchRows, MAX_BATCH_ROWS);
+        if(multiValues){
+            limit = Math.min(limit, MAX_PARAMETERS / Math.max(1, columns.length));
+        }
+        this.maxRows = Math.max(1, limit);
+        this.buffer = new Object[maxRows * columns.length];
+    }
+
+    /**
+     * 加入一行，必要时先提交之前的行
+     * @param entity
+     * @throws Exception
+     */
+    void add(Object entity) throws Exception {
+        int width = columns.length;
+        int base = rows * width;
+        long rowBytes = placeholders.length() + 1;
+        for (int i = 0; i < width; i++) {
+            Object value = columns[i].get(entity);
+            buffer[base + i] = value;
+            rowBytes += estimateBytes(value);
+        }
+        if(rows > 0 && bytes + rowBytes > maxBytes){
+            flush();
+            System.arraycopy(buffer, base, buffer, 0, width);
+            Arrays.fill(buffer, base, base + width, null);
+        }
+        rows++;
+        bytes += rowBytes;
+        if(rows == maxRows){
+            flush();
+        }
+    }
+
+    /**
+     * 提交剩余的行并返回结果
+     * @return
+     */
+    BatchResult finish() {
+        flush();
+        return result;
+    }
+
+    private void flush() {
+        if(rows == 0){
+            return;
+        }
+        final int n = rows;
+        int updateCount = 0;
+        try {
+            if(multiValues){
+                updateCount = jdbcTemplate.update(multiValuesSql(n), new PropertyArgumentSetter(columns, buffer, n * columns.length));
+            } else {
+                int[] counts = jdbcTemplate.batchUpdate(head + placeholders, new BatchPreparedStatementSetter() {
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        int base = i * columns.length;
+                        for (int c = 0; c < columns.length; c++) {
+                            columns[c].bind(ps, c + 1, buffer[base + c]);
+                        }
+                    }
+
+                    public int getBatchSize() {
+                        return n;
+                    }
+                });
+                for (int count : counts) {
+                    // 驱动改写批量语句后可能只返回SUCCESS_NO_INFO
+                    updateCount += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+                }
+            }
+        } catch (RuntimeException e){
+            log.error("第" + (result.getChunks().size() + 1) + "批插入失败，之前已提交" + offset + "行", e);
+            throw e;
+        }
+        result.add(new BatchResult.Chunk(offset, n, bytes, updateCount));
+        offset += n;
+        Arrays.fill(buffer, 0, n * columns.length, null);
+        rows = 0;
+        bytes = 0;
+    }
+
+    private String multiValuesSql(int n) {
+        if(n != lastRows){
+            StringBuilder sb = new StringBuilder(head.length() + n * (placeholders.length() + 1));
+            sb.append(head);
+            for (int i = 0; i < n; i++) {
+                if(i > 0){
+                    sb.append(",");
+                }
+                sb.append(placeholders);
+            }
+            lastSql = sb.toString();
+            lastRows = n;
+        }
+        return lastSql;
+    }
+
+    /**
+     * 估算一个值在语句中占用的字节数（按驱动把参数转成文本计算）
+     */
+    static int estimateBytes(Object value) {
+        if(value == null){
+            return 5;
+        }
+        if(value instanceof String){
+            // utf8最多3字节，加上引号和分隔符
+            return ((String) value).length() * 3 + 3;
+        }
+        if(value instanceof byte[]){
+            return ((byte[]) value).length * 2 + 4;
+        }
+        if(value instanceof Number || value instanceof Boolean){
+            return 21;
+        }
+        if(value instanceof Date){
+            return 29;
+        }
+        return String.valueOf(value).length() * 3 + 3;
+    }
+}
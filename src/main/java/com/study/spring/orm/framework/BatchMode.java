@@ -0,0 +1,13 @@
+package com.study.spring.orm.framework;
+
+/**
+ * 批量插入的执行方式
+ */
+public enum BatchMode {
+    // 根据方言选择：驱动会改写批量语句时使用JDBC批量，否则使用多行VALUES
+    AUTO,
+    // addBatch/executeBatch，每行一组参数
+    JDBC_BATCH,
+    // 一条insert语句带多行VALUES
+    MULTI_VALUES
+}
@@ -0,0 +1,75 @@
+package com.study.spring.orm.framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 批量写入结果，按批记录行数和受影响的行数
+ */
+public class BatchResult {
+    private final List<Chunk> chunks = new ArrayList<Chunk>();
+    private int rowCount;
+    private int updateCount;
+
+    void add(Chunk chunk) {
+        chunks.add(chunk);
+        rowCount += chunk.rows;
+        updateCount += chunk.updateCount;
+    }
+
+    // 每一批的执行结果
+    public List<Chunk> getChunks() {
+        return Collections.unmodifiableList(chunks);
+    }
+
+    // 提交的总行数
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    // 受影响的总行数
+    public int getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * 一批的执行结果
+     */
+    public static class Chunk {
+        // 本批第一行在全部数据中的位置，从0开始
+        private final long offset;
+        private final int rows;
+        // 估算的语句字节数
+        private final long bytes;
+        private final int updateCount;
+
+        Chunk(long offset, int rows, long bytes, int updateCount) {
+            this.offset = offset;
+            this.rows = rows;
+            this.bytes = bytes;
+            this.updateCount = updateCount;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public int getUpdateCount() {
+            return updateCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Chunk{" + offset + "+" + rows + ", " + bytes + " bytes, " + updateCount + " updated}";
+        }
+    }
+}
@@ -12,20 +12,26 @@ import java.util.*;
 
 public class ClassMappings {
     static final Set<Class<?>> SUPPORTED_SQL_OBJECTS = new HashSet<Class<?>>();
+    // 每种支持的类型对应的JDBC读写方式
+    static final Map<Class<?>, JdbcTypeHandler> SQL_TYPE_HANDLERS = new HashMap<Class<?>, JdbcTypeHandler>();
     static {
-        Class<?>[] classes = {
-                boolean.class, Boolean.class,
-                short.class, Short.class,
-                int.class, Integer.class,
-                long.class, Long.class,
-                float.class, Float.class,
-                double.class, Double.class,
-                String.class,
-                Date.class,
-                Timestamp.class,
-                BigDecimal.class
-        };
-        SUPPORTED_SQL_OBJECTS.addAll(Arrays.asList(classes));
+        SQL_TYPE_HANDLERS.put(boolean.class, JdbcTypeHandlers.BOOLEAN);
+        SQL_TYPE_HANDLERS.put(Boolean.class, JdbcTypeHandlers.BOOLEAN);
+        SQL_TYPE_HANDLERS.put(short.class, JdbcTypeHandlers.SHORT);
+        SQL_TYPE_HANDLERS.put(Short.class, JdbcTypeHandlers.SHORT);
+        SQL_TYPE_HANDLERS.put(int.class, JdbcTypeHandlers.INTEGER);
+        SQL_TYPE_HANDLERS.put(Integer.class, JdbcTypeHandlers.INTEGER);
+        SQL_TYPE_HANDLERS.put(long.class, JdbcTypeHandlers.LONG);
+        SQL_TYPE_HANDLERS.put(Long.class, JdbcTypeHandlers.LONG);
+        SQL_TYPE_HANDLERS.put(float.class, JdbcTypeHandlers.FLOAT);
+        SQL_TYPE_HANDLERS.put(Float.class, JdbcTypeHandlers.FLOAT);
+        SQL_TYPE_HANDLERS.put(double.class, JdbcTypeHandlers.DOUBLE);
+        SQL_TYPE_HANDLERS.put(Double.class, JdbcTypeHandlers.DOUBLE);
+        SQL_TYPE_HANDLERS.put(String.class, JdbcTypeHandlers.STRING);
+        SQL_TYPE_HANDLERS.put(Date.class, JdbcTypeHandlers.DATE);
+        SQL_TYPE_HANDLERS.put(Timestamp.class, JdbcTypeHandlers.TIMESTAMP);
+        SQL_TYPE_HANDLERS.put(BigDecimal.class, JdbcTypeHandlers.BIG_DECIMAL);
+        SUPPORTED_SQL_OBJECTS.addAll(SQL_TYPE_HANDLERS.keySet());
     }
 
     private ClassMappings(){}
@@ -34,6 +40,18 @@ public class ClassMappings {
         return clazz.isEnum() || SUPPORTED_SQL_OBJECTS.contains(clazz);
     }
 
+    /**
+     * 获取类型对应的JDBC读写方式，枚举按名称以字符串读写
+     * @param clazz
+     * @return 不支持的类型返回null
+     */
+    static JdbcTypeHandler getTypeHandler(Class<?> clazz){
+        if(clazz.isEnum()){
+            return JdbcTypeHandlers.STRING;
+        }
+        return SQL_TYPE_HANDLERS.get(clazz);
+    }
+
     public static Map<String, Method> findPublicGetters(Class<?> clazz) {
         Map<String, Method> map = new HashMap<String, Method>();
         Method[] methods = clazz.getMethods();
@@ -0,0 +1,105 @@
+package com.study.spring.orm.framework;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 分页总数缓存
+ * 按数据源、count语句和参数值缓存，超过有效期后重新查询
+ */
+final class CountCache {
+    // 缓存条数上限，清理过期条目后仍然超过时不再缓存
+    private static final int MAX_ENTRIES = 10000;
+
+    private final long ttlMillis;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+
+    CountCache(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 获取缓存的总数，没有或已过期时返回null
+     */
+    Long get(String dataSource, String countSql, Object[] args) {
+        Key key = new Key(dataSource, countSql, args);
+        Entry entry = entries.get(key);
+        if(entry == null){
+            return null;
+        }
+        if(entry.expireAt < System.currentTimeMillis()){
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.count;
+    }
+
+    void put(String dataSource, String countSql, Object[] args, long count) {
+        long now = System.currentTimeMillis();
+        if(entries.size() >= MAX_ENTRIES){
+            evictExpired(now);
+            if(entries.size() >= MAX_ENTRIES){
+                return;
+            }
+        }
+        entries.put(new Key(dataSource, countSql, args.clone()), new Entry(count, now + ttlMillis));
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<Key, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            if(it.next().getValue().expireAt < now){
+                it.remove();
+            }
+        }
+    }
+
+    private static final class Entry {
+        final long count;
+        final long expireAt;
+
+        Entry(long count, long expireAt) {
+            this.count = count;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static final class Key {
+        private final String dataSource;
+        private final String countSql;
+        private final Object[] args;
+        private final int hash;
+
+        Key(String dataSource, String countSql, Object[] args) {
+            this.dataSource = dataSource;
+            this.countSql = countSql;
+            this.args = args;
+            int h = dataSource == null ? 0 : dataSource.hashCode();
+            h = h * 31 + countSql.hashCode();
+            this.hash = h * 31 + Arrays.hashCode(args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o){
+                return true;
+            }
+            if(!(o instanceof Key)){
+                return false;
+            }
+            Key key = (Key) o;
+            return hash == key.hash
+                    && (dataSource == null ? key.dataSource == null : dataSource.equals(key.dataSource))
+                    && countSql.equals(key.countSql)
+                    && Arrays.equals(args, key.args);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.study.spring.orm.framework;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 每个连接池同时执行的异步任务数
+ * 按当前线程的数据源标记找到实际的连接池，Druid连接池使用maxActive，其他连接池默认不限制
+ * 同一个连接池的所有AsyncBaseDao共用一个计数
+ */
+final class DataSourcePermits {
+    private static final Logger log = Logger.getLogger(DataSourcePermits.class);
+
+    // 没有限制时的占位
+    private static final Semaphore UNLIMITED = new Semaphore(Integer.MAX_VALUE);
+
+    private static final ConcurrentMap<DataSource, Semaphore> permits = new ConcurrentHashMap<DataSource, Semaphore>();
+
+    private DataSourcePermits() {
+    }
+
+    /**
+     * 指定连接池同时执行的异步任务数
+     * @param dataSource 实际的连接池，不是路由数据源
+     * @param maxConcurrency
+     */
+    static void set(DataSource dataSource, int maxConcurrency) {
+        if(maxConcurrency <= 0){
+            throw new IllegalArgumentException("maxConcurrency必须大于0");
+        }
+        permits.put(dataSource, new Semaphore(maxConcurrency));
+    }
+
+    /**
+     * 获取数据源在当前线程的数据源标记下对应连接池的计数
+     * @param dataSource
+     * @return 不限制时返回null
+     */
+    static Semaphore of(DataSource dataSource) {
+        DataSource target = target(dataSource);
+        Semaphore semaphore = permits.get(target);
+        if(semaphore == null){
+            semaphore = create(target);
+            Semaphore existing = permits.putIfAbsent(target, semaphore);
+            if(existing != null){
+                semaphore = existing;
+            }
+        }
+        return semaphore == UNLIMITED ? null : semaphore;
+    }
+
+    private static Semaphore create(DataSource target) {
+        if(target instanceof DruidDataSource){
+            return new Semaphore(((DruidDataSource) target).getMaxActive());
+        }
+        return UNLIMITED;
+    }
+
+    // 路由数据源按当前线程的数据源标记解析到实际的连接池
+    private static DataSource target(DataSource dataSource) {
+        if(dataSource instanceof DruidDataSource){
+            return dataSource;
+        }
+        try {
+            if(dataSource.isWrapperFor(DruidDataSource.class)){
+                return dataSource.unwrap(DruidDataSource.class);
+            }
+        } catch (Exception e) {
+            log.debug("无法解析" + dataSource + "的连接池", e);
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,85 @@
+package com.study.spring.orm.framework;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 数据库方言，生成不同数据库的专有语句
+ * 内置MySqlDialect和H2Dialect，BaseDaoSupport根据数据源自动识别，也可以通过setDialect指定
+ */
+public interface Dialect {
+
+    /**
+     * 方言名称，用于区分缓存的语句
+     * @return
+     */
+    String getName();
+
+    /**
+     * 生成upsert语句：主键不存在时插入，存在时更新
+     * @param tableName 表名
+     * @param pkName 主键列名
+     * @param columns 插入的列，包含主键，参数按此顺序绑定
+     * @param updateColumns 主键已存在时更新的列，不含主键
+     * @return
+     */
+    String upsertSql(String tableName, String pkName, String[] columns, String[] updateColumns);
+
+    /**
+     * 生成分页语句
+     * @param sql 查询语句
+     * @param offset 跳过的行数
+     * @param limit 返回的最大行数
+     * @return
+     */
+    String pageSql(String sql, long offset, int limit);
+
+    /**
+     * 限制update/delete语句影响的行数，用于分批删除
+     * @param sql update或delete语句
+     * @param limit 最多影响的行数
+     * @return
+     */
+    String limitRows(String sql, int limit);
+
+    /**
+     * 按主键覆盖写入的语句开头，后接"表名(列) values (...)"，支持多行values
+     * @return
+     */
+    String replaceInto();
+
+    /**
+     * 创建可以取回自增主键的插入语句
+     * @param connection
+     * @param sql 插入语句
+     * @param pkName 主键列名
+     * @return
+     * @throws SQLException
+     */
+    PreparedStatement prepareReturningKeys(Connection connection, String sql, String pkName) throws SQLException;
+
+    /**
+     * 批量插入时是否优先使用JDBC批量，为false时使用多行VALUES
+     * @return
+     */
+    boolean preferJdbcBatch();
+
+    /**
+     * 单条语句允许的最大字节数，批量插入按此拆分
+     * @return
+     */
+    long maxStatementBytes();
+
+    /**
+     * 流式查询使用的fetchSize，驱动按此分批读取结果集
+     * @return
+     */
+    int streamFetchSize();
+
+    /**
+     * 升序排序时null是否排在最前，降序时相反；游标分页按此展开null的比较条件
+     * @return
+     */
+    boolean nullsFirst();
+}
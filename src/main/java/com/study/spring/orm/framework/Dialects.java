@@ -0,0 +1,93 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * 方言的识别和公共拼接方法
+ */
+final class Dialects {
+    private static final Logger log = Logger.getLogger(Dialects.class);
+
+    static final Dialect MYSQL = new MySqlDialect();
+    static final Dialect H2 = new H2Dialect();
+
+    private Dialects(){}
+
+    /**
+     * 根据数据库元数据识别方言，无法识别时按MySQL处理
+     * @param dataSource
+     * @return
+     */
+    static Dialect detect(DataSource dataSource) {
+        if(dataSource == null){
+            return MYSQL;
+        }
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            String product = connection.getMetaData().getDatabaseProductName();
+            if(product != null && product.toLowerCase().contains("h2")){
+                return H2;
+            }
+            if(product == null || !product.toLowerCase().contains("mysql")){
+                log.warn("未识别的数据库" + product + "，按MySQL方言处理");
+                return MYSQL;
+            }
+            String url = connection.getMetaData().getURL();
+            boolean rewrite = url != null && url.toLowerCase().contains("rewritebatchedstatements=true");
+            return new MySqlDialect(rewrite, maxAllowedPacket(connection));
+        } catch (Exception e) {
+            log.warn("识别数据库方言失败，按MySQL方言处理", e);
+            return MYSQL;
+        } finally {
+            if(connection != null){
+                try {
+                    connection.close();
+                } catch (Exception ignore) {
+                }
+            }
+        }
+    }
+
+    // 查询服务器的max_allowed_packet，失败时使用默认值
+    private static long maxAllowedPacket(Connection connection) {
+        Statement statement = null;
+        try {
+            statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery("select @@max_allowed_packet");
+            if(rs.next()){
+                return rs.getLong(1);
+            }
+        } catch (Exception e) {
+            log.warn("查询max_allowed_packet失败，使用默认值", e);
+        } finally {
+            if(statement != null){
+                try {
+                    statement.close();
+                } catch (Exception ignore) {
+                }
+            }
+        }
+        return MySqlDialect.DEFAULT_MAX_ALLOWED_PACKET;
+    }
+
+    static void appendColumns(StringBuilder sb, String[] columns) {
+        for (int i = 0; i < columns.length; i++) {
+            if(i > 0){
+                sb.append(",");
+            }
+            sb.append(columns[i]);
+        }
+    }
+
+    static void appendPlaceholders(StringBuilder sb, int count) {
+        for (int i = 0; i < count; i++) {
+            sb.append(i > 0 ? ",?" : "?");
+        }
+    }
+}
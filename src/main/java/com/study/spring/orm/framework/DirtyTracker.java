@@ -0,0 +1,172 @@
+package com.study.spring.orm.framework;
+
+import javax.core.common.jdbc.datasource.RoutingContext;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 记录通过get/select加载的实体快照，update时只更新发生变化的列
+ * 快照按数据源标记、表名和主键保存，同一个DAO路由到不同库或表时主键相同也不会混用；
+ * 数据源标记取当前线程的RoutingContext.current()，超过容量时淘汰最久未使用的
+ * @param <T>
+ */
+public class DirtyTracker<T> {
+    private static final int DEFAULT_CAPACITY = 10000;
+
+    private final EntityOperation<T> op;
+    private final Map<SnapshotKey, Object[]> snapshots;
+
+    public DirtyTracker(EntityOperation<T> op) {
+        this(op, DEFAULT_CAPACITY);
+    }
+
+    public DirtyTracker(EntityOperation<T> op, int capacity) {
+        this.op = op;
+        this.snapshots = new SnapshotMap(capacity);
+    }
+
+    /**
+     * 记录实体当前的列值
+     * @param tableName 加载实体的表
+     * @param pkValue
+     * @param entity
+     * @throws Exception
+     */
+    public void track(String tableName, Object pkValue, T entity) throws Exception {
+        if(pkValue == null){
+            return;
+        }
+        PropertyMapping[] columns = op.columns;
+        Object[] snapshot = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            snapshot[i] = copy(columns[i].get(entity));
+        }
+        synchronized (snapshots) {
+            snapshots.put(new SnapshotKey(tableName, pkValue), snapshot);
+        }
+    }
+
+    /**
+     * 与快照比较，得到发生变化的非空列
+     * 与parse(T)一致，值为null的列不参与更新
+     * @param tableName 更新的表
+     * @param pkValue
+     * @param entity
+     * @param values 长度与EntityOperation.columns一致，用于接收当前列值
+     * @return 没有快照时返回null；没有变化时返回空集合
+     * @throws Exception
+     */
+    public BitSet changedColumns(String tableName, Object pkValue, T entity, Object[] values) throws Exception {
+        if(pkValue == null){
+            return null;
+        }
+        Object[] snapshot;
+        synchronized (snapshots) {
+            snapshot = snapshots.get(new SnapshotKey(tableName, pkValue));
+        }
+        if(snapshot == null){
+            return null;
+        }
+        BitSet changed = new BitSet(values.length);
+        PropertyMapping[] columns = op.columns;
+        for (int i = 0; i < columns.length; i++) {
+            Object value = columns[i].get(entity);
+            values[i] = value;
+            if(value == null || value.equals(snapshot[i])){
+                continue;
+            }
+            changed.set(i);
+        }
+        return changed;
+    }
+
+    /**
+     * 删除快照
+     * @param tableName
+     * @param pkValue
+     */
+    public void forget(String tableName, Object pkValue) {
+        if(pkValue == null){
+            return;
+        }
+        synchronized (snapshots) {
+            snapshots.remove(new SnapshotKey(tableName, pkValue));
+        }
+    }
+
+    /**
+     * 删除全部快照，按条件批量修改后快照不再可信
+     */
+    public void clear() {
+        synchronized (snapshots) {
+            snapshots.clear();
+        }
+    }
+
+    // 可变的日期类型需要复制，避免调用方修改后快照跟着变
+    private static Object copy(Object value){
+        if(value instanceof Date){
+            return ((Date) value).clone();
+        }
+        return value;
+    }
+
+    /**
+     * 快照的键：数据源标记、表名、主键
+     */
+    private static final class SnapshotKey {
+        private final String routingKey;
+        private final String tableName;
+        private final Object pkValue;
+
+        SnapshotKey(String tableName, Object pkValue) {
+            this.routingKey = RoutingContext.current();
+            this.tableName = tableName;
+            this.pkValue = pkValue;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o){
+                return true;
+            }
+            if(!(o instanceof SnapshotKey)){
+                return false;
+            }
+            SnapshotKey key = (SnapshotKey) o;
+            return pkValue.equals(key.pkValue) && equals(routingKey, key.routingKey) && equals(tableName, key.tableName);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = pkValue.hashCode();
+            h = 31 * h + (tableName == null ? 0 : tableName.hashCode());
+            return 31 * h + (routingKey == null ? 0 : routingKey.hashCode());
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    /**
+     * 按访问顺序排列，超过容量时淘汰最久未使用的快照
+     */
+    private static final class SnapshotMap extends LinkedHashMap<SnapshotKey, Object[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        SnapshotMap(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SnapshotKey, Object[]> eldest) {
+            return size() > capacity;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.study.spring.orm.framework;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 编译期生成的实体映射器
+ * 由spring-orm-processor为每个@Entity类生成{实体类名}_EntityMapper，
+ * EntityOperation发现生成类时用它代替反射完成行映射和属性读写；
+ * SQL和参数绑定仍由SqlTemplate按PropertyMapping生成，以支持动态表名
+ * @param <T>
+ */
+public interface EntityMapper<T> {
+
+    // 生成类名的后缀
+    String CLASS_SUFFIX = "_EntityMapper";
+
+    /**
+     * 列名，下标即其余方法中的column参数
+     * @return
+     */
+    String[] columns();
+
+    T newInstance();
+
+    /**
+     * 从结果集读取一列写入实体，数据库中为NULL时不赋值
+     * @param entity
+     * @param column 列序号，对应columns()的下标
+     * @param rs
+     * @param index 结果集列下标，从1开始
+     * @throws SQLException
+     */
+    void read(T entity, int column, ResultSet rs, int index) throws SQLException;
+
+    // 读取一列的属性值
+    Object get(T entity, int column);
+
+    // 写入一列的属性值，value类型须与属性一致
+    void set(T entity, int column, Object value);
+}
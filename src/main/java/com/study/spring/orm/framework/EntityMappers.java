@@ -0,0 +1,54 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+
+/**
+ * 查找编译期生成的EntityMapper
+ */
+final class EntityMappers {
+    private static Logger log = Logger.getLogger(EntityMappers.class);
+
+    private EntityMappers(){}
+
+    /**
+     * 查找实体类对应的生成类
+     * @param clazz
+     * @return 没有生成类时返回null
+     */
+    @SuppressWarnings("unchecked")
+    static <T> EntityMapper<T> find(Class<T> clazz){
+        String name = clazz.getName() + EntityMapper.CLASS_SUFFIX;
+        try {
+            Class<?> mapperClass = Class.forName(name, true, clazz.getClassLoader());
+            return (EntityMapper<T>) mapperClass.newInstance();
+        } catch (ClassNotFoundException e){
+            return null;
+        } catch (Exception e){
+            log.warn("无法加载生成的映射器" + name + "，使用反射映射", e);
+            return null;
+        }
+    }
+
+    /**
+     * 以生成的映射器读写某一列
+     */
+    static final class MapperAccessor<T> implements PropertyAccessor {
+        private final EntityMapper<T> mapper;
+        private final int column;
+
+        MapperAccessor(EntityMapper<T> mapper, int column) {
+            this.mapper = mapper;
+            this.column = column;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object get(Object target) throws Exception {
+            return mapper.get((T) target, column);
+        }
+
+        @SuppressWarnings("unchecked")
+        public void set(Object target, Object value) throws Exception {
+            mapper.set((T) target, column, value);
+        }
+    }
+}
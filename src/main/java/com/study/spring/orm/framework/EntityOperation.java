@@ -6,14 +6,14 @@ import org.springframework.jdbc.core.RowMapper;
 
 import javax.persistence.*;
 import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-import java.sql.SQLException;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * 实体对象的反射操作
@@ -25,12 +25,23 @@ public class EntityOperation<T> {
     // 泛型实体Class对象
     public Class<T> entityClass = null;
     public final Map<String, PropertyMapping> mappings;
+    // 全部列及列名，顺序与allColumn一致
+    public final PropertyMapping[] columns;
+    public final String[] columnNames;
     public final RowMapper<T> rowMapper;
+    // 编译期生成的映射器，没有时为null
+    public final EntityMapper<T> generatedMapper;
 
     public final String tableName;
     public String allColumn = "*";
     public Field pkField;
 
+    // 列名到columns下标
+    private final Map<String, Integer> columnIndexes = new HashMap<String, Integer>();
+    // 语句模板缓存，超过上限后不再缓存新组合
+    private static final int MAX_TEMPLATES = 1024;
+    private final ConcurrentMap<SqlTemplate.Key, SqlTemplate> templates = new ConcurrentHashMap<SqlTemplate.Key, SqlTemplate>();
+
     public EntityOperation(Class<T> clazz, String pk) throws Exception {
         if(!clazz.isAnnotationPresent(Entity.class)){
             throw new Exception("在" + clazz.getName() + "中没有找到Entity注解，不能做ORM映射");
@@ -44,40 +55,32 @@ public class EntityOperation<T> {
             this.tableName = entityClass.getSimpleName();
         }
 
+        this.generatedMapper = EntityMappers.find(entityClass);
+
         Map<String, Method> getters = ClassMappings.findPublicGetters(entityClass);
-        Map<String, Method> setters = ClassMappings.findPublicGetters(entityClass);
+        Map<String, Method> setters = ClassMappings.findePublicSetters(entityClass);
         Field[] fields = ClassMappings.findFields(entityClass);
         fillPkFieldAndAllColumn(pk, fields);
 
         this.mappings = getPropertyMappings(getters, setters, fields);
+        this.columns = this.mappings.values().toArray(new PropertyMapping[this.mappings.size()]);
+        this.columnNames = this.mappings.keySet().toArray(new String[this.mappings.size()]);
+        for (int i = 0; i < columnNames.length; i++) {
+            this.columnIndexes.put(columnNames[i], i);
+        }
         this.allColumn = this.mappings.keySet().toString().replace("[","").replace("]","").replaceAll(" ","");
-        this.rowMapper = createRowMapper();
-    }
-
-    private RowMapper<T> createRowMapper() {
-        return new RowMapper<T>() {
-            public T mapRow(ResultSet resultSet, int rowNum) throws SQLException {
-                try {
-                    T t = entityClass.newInstance();
-                    ResultSetMetaData meta = resultSet.getMetaData();
-                    int columns = meta.getColumnCount();
-                    String columnName;
-                    for (int i = 1; i <= columns; i++) {
-                        Object value = resultSet.getObject(i);
-                        columnName = meta.getColumnName(i);
-                        fillBeanFieldValue(t, columnName, value);
-                    }
-                    return t;
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        };
-
+        this.rowMapper = new EntityRowMapper<T>(entityClass, mappings, generatedMapper);
     }
 
     private Map<String, PropertyMapping> getPropertyMappings(Map<String, Method> getters, Map<String, Method> setters, Field[] fields) {
         Map<String, PropertyMapping> mappings = new HashMap<String, PropertyMapping>();
+        Map<String, Integer> generatedColumns = new HashMap<String, Integer>();
+        if(generatedMapper != null){
+            String[] columns = generatedMapper.columns();
+            for (int i = 0; i < columns.length; i++) {
+                generatedColumns.put(columns[i], i);
+            }
+        }
         String name;
         for (Field field : fields) {
             if(field.isAnnotationPresent(Transient.class)){
@@ -95,16 +98,89 @@ public class EntityOperation<T> {
                 continue;
             }
             Column column = field.getAnnotation(Column.class);
-            if(column == null){
-                mappings.put(field.getName(), new PropertyMapping(getter, setter, field));
-            } else {
-                mappings.put(column.name(), new PropertyMapping(getter, setter, field));
-            }
+            String columnName = column == null ? field.getName() : column.name();
+            Integer generatedColumn = generatedColumns.get(columnName);
+            PropertyAccessor accessor = generatedColumn == null ? null
+                    : new EntityMappers.MapperAccessor<T>(generatedMapper, generatedColumn);
+            mappings.put(columnName, new PropertyMapping(getter, setter, field, accessor));
         }
         return mappings;
 
     }
 
+    /**
+     * 创建空实体，有生成的EntityMapper时不经过反射
+     * @return
+     * @throws Exception
+     */
+    public T newInstance() throws Exception {
+        return generatedMapper != null ? generatedMapper.newInstance() : entityClass.newInstance();
+    }
+
+    /**
+     * 获取语句模板，相同类型、表名、主键和列组合只生成一次
+     * @param kind SqlTemplate中的语句类型
+     * @param table 表名
+     * @param pkName 主键列名
+     * @param columns 参与的列，下标与columns一致
+     * @return
+     */
+    public SqlTemplate template(int kind, String table, String pkName, BitSet columns) {
+        return template(kind, null, table, pkName, columns);
+    }
+
+    /**
+     * 获取与方言相关的语句模板
+     * @param kind SqlTemplate中的语句类型
+     * @param dialect 方言
+     * @param table 表名
+     * @param pkName 主键列名
+     * @param columns 参与的列，下标与columns一致
+     * @return
+     */
+    public SqlTemplate template(int kind, Dialect dialect, String table, String pkName, BitSet columns) {
+        String dialectName = dialect == null ? null : dialect.getName();
+        SqlTemplate.Key key = new SqlTemplate.Key(kind, dialectName, table, pkName, columns);
+        SqlTemplate template = templates.get(key);
+        if(template == null){
+            template = SqlTemplate.build(kind, dialect, table, pkName, columns, this);
+            if(templates.size() < MAX_TEMPLATES){
+                // 键中的列位图要复制，调用方可能继续修改
+                templates.putIfAbsent(new SqlTemplate.Key(kind, dialectName, table, pkName, (BitSet) columns.clone()), template);
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 读取实体的全部列值
+     * @param t
+     * @param values 长度与columns一致，用于接收列值
+     * @return 非空的列
+     * @throws Exception
+     */
+    public BitSet readColumns(T t, Object[] values) throws Exception {
+        BitSet present = new BitSet(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            Object value = columns[i].get(t);
+            values[i] = value;
+            if(value != null){
+                present.set(i);
+            }
+        }
+        return present;
+    }
+
+    /**
+     * 列在columns中的下标
+     * @param columnName
+     * @return 不存在时返回-1
+     */
+    public int columnIndex(String columnName) {
+        Integer index = columnIndexes.get(columnName);
+        return index == null ? -1 : index;
+    }
+
     // 设定主键
     private void fillPkFieldAndAllColumn(String pk, Field[] fields) {
         if(!StringUtils.isEmpty(pk)){
@@ -120,6 +196,7 @@ public class EntityOperation<T> {
                 Id id = field.getAnnotation(Id.class);
                 if(id != null){
                     pkField = field;
+                    pkField.setAccessible(true);
                     break;
                 }
             }
@@ -162,15 +239,13 @@ public class EntityOperation<T> {
         Map<String, Object> map = new TreeMap<String, Object>();
         try {
             for (String columnName : mappings.keySet()) {
-                Object value = mappings.get(columnName).getter.invoke(t);
+                Object value = mappings.get(columnName).get(t);
                 if(value == null){
                     continue;
                 }
                 map.put(columnName, value);
             }
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
         return map;
@@ -179,15 +254,13 @@ public class EntityOperation<T> {
     public void println(T t){
         try {
             for (String columnName : mappings.keySet()) {
-                Object value = mappings.get(columnName).getter.invoke(t);
+                Object value = mappings.get(columnName).get(t);
                 if(value == null){
                     continue;
                 }
                 System.out.println(columnName + " = " + value);
             }
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InvocationTargetException e) {
+        } catch (Exception e) {
             e.printStackTrace();
         }
     }
@@ -0,0 +1,95 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AnnotationTypeFilter;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.Entity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 启动时预热实体映射
+ * 在DAO实例化之前扫描basePackage下的@Entity类，并行构建EntityOperation放入注册表
+ */
+public class EntityOperationPrewarmer implements BeanFactoryPostProcessor {
+    private Logger log = Logger.getLogger(EntityOperationPrewarmer.class);
+
+    // 扫描的包，多个用逗号分隔
+    private String basePackage;
+    // 并行线程数，默认为CPU核数
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    public void setBasePackage(String basePackage) {
+        this.basePackage = basePackage;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+        if(!StringUtils.hasText(basePackage)){
+            return;
+        }
+        prewarm(beanFactory.getBeanClassLoader());
+    }
+
+    /**
+     * 扫描并构建所有实体的映射
+     * @param classLoader
+     * @return 成功预热的实体数
+     */
+    public int prewarm(ClassLoader classLoader) {
+        long start = System.currentTimeMillis();
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter(new AnnotationTypeFilter(Entity.class));
+
+        List<String> classNames = new ArrayList<String>();
+        for (String pkg : StringUtils.tokenizeToStringArray(basePackage, ",; \t\n")) {
+            for (BeanDefinition definition : scanner.findCandidateComponents(pkg)) {
+                classNames.add(definition.getBeanClassName());
+            }
+        }
+        if(classNames.isEmpty()){
+            return 0;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, classNames.size())));
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (final String className : classNames) {
+                final ClassLoader loader = classLoader;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        Class<?> clazz = ClassUtils.forName(className, loader);
+                        return EntityOperationRegistry.get(clazz, null);
+                    }
+                }));
+            }
+            int count = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                    count++;
+                } catch (Exception e) {
+                    log.warn("预热实体映射失败：" + classNames.get(i), e);
+                }
+            }
+            log.info("预热实体映射" + count + "个，耗时" + (System.currentTimeMillis() - start) + "ms");
+            return count;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
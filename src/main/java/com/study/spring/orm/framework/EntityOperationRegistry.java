@@ -0,0 +1,90 @@
+package com.study.spring.orm.framework;
+
+import org.apache.commons.lang.StringUtils;
+
+import javax.persistence.Id;
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 进程内共享的EntityOperation注册表
+ * 同一个实体类(及主键)只解析一次映射，所有DAO共用
+ */
+public final class EntityOperationRegistry {
+    private static final ConcurrentMap<Key, EntityOperation<?>> operations = new ConcurrentHashMap<Key, EntityOperation<?>>();
+
+    private EntityOperationRegistry(){}
+
+    /**
+     * 获取实体类对应的EntityOperation，不存在时创建
+     * @param clazz 实体类
+     * @param pk 主键属性名，为空时使用@Id标注的属性，没有@Id时使用名为id的属性
+     * @return
+     * @throws Exception
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> EntityOperation<T> get(Class<T> clazz, String pk) throws Exception {
+        Key key = new Key(clazz, resolvePk(clazz, pk));
+        EntityOperation<?> op = operations.get(key);
+        if(op == null){
+            EntityOperation<?> created = new EntityOperation<T>(clazz, key.pk);
+            op = operations.putIfAbsent(key, created);
+            if(op == null){
+                op = created;
+            }
+        }
+        return (EntityOperation<T>) op;
+    }
+
+    /**
+     * 已注册的实体数
+     * @return
+     */
+    public static int size(){
+        return operations.size();
+    }
+
+    static String resolvePk(Class<?> clazz, String pk){
+        if(!StringUtils.isEmpty(pk)){
+            return pk;
+        }
+        String defaultPk = null;
+        for (Field field : ClassMappings.findFields(clazz)) {
+            if(field.isAnnotationPresent(Id.class)){
+                return field.getName();
+            }
+            if("id".equals(field.getName())){
+                defaultPk = field.getName();
+            }
+        }
+        return defaultPk;
+    }
+
+    private static final class Key {
+        final Class<?> clazz;
+        final String pk;
+
+        Key(Class<?> clazz, String pk) {
+            this.clazz = clazz;
+            this.pk = pk;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return clazz == key.clazz && (pk == null ? key.pk == null : pk.equals(key.pk));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * clazz.hashCode() + (pk == null ? 0 : pk.hashCode());
+        }
+    }
+}
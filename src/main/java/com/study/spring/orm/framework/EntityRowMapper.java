@@ -0,0 +1,134 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按列下标映射实体的RowMapper
+ * 每个ResultSet只读取一次ResultSetMetaData，解析出列下标到PropertyMapping的数组，
+ * 之后每一行只需按下标循环赋值；有编译期生成的EntityMapper时由它直接读列赋值
+ * @param <T>
+ */
+public class EntityRowMapper<T> implements RowMapper<T> {
+    private final Class<T> entityClass;
+    private final Map<String, PropertyMapping> mappings;
+    // 列名不区分大小写时的备用索引
+    private final Map<String, PropertyMapping> lowerCaseMappings;
+    private final EntityMapper<T> generatedMapper;
+    // 列名到生成映射器列序号
+    private final Map<String, Integer> generatedColumns;
+
+    // RowMapper会被多个线程共享，每个线程记录自己当前正在映射的ResultSet
+    private final ThreadLocal<ColumnPlan> plans = new ThreadLocal<ColumnPlan>();
+
+    public EntityRowMapper(Class<T> entityClass, Map<String, PropertyMapping> mappings) {
+        this(entityClass, mappings, null);
+    }
+
+    public EntityRowMapper(Class<T> entityClass, Map<String, PropertyMapping> mappings, EntityMapper<T> generatedMapper) {
+        this.entityClass = entityClass;
+        this.mappings = mappings;
+        this.lowerCaseMappings = new HashMap<String, PropertyMapping>();
+        for (Map.Entry<String, PropertyMapping> entry : mappings.entrySet()) {
+            this.lowerCaseMappings.put(entry.getKey().toLowerCase(), entry.getValue());
+        }
+        this.generatedMapper = generatedMapper;
+        this.generatedColumns = new HashMap<String, Integer>();
+        if(generatedMapper != null){
+            String[] columns = generatedMapper.columns();
+            for (int i = 0; i < columns.length; i++) {
+                this.generatedColumns.put(columns[i].toLowerCase(), i);
+            }
+        }
+    }
+
+    public T mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        ColumnPlan plan = resolvePlan(resultSet);
+        if(generatedMapper != null){
+            T t = generatedMapper.newInstance();
+            int[] columns = plan.generatedColumns;
+            for (int i = 0; i < columns.length; i++) {
+                if(columns[i] >= 0){
+                    generatedMapper.read(t, columns[i], resultSet, i + 1);
+                }
+            }
+            return t;
+        }
+        PropertyMapping[] columns = plan.columns;
+        try {
+            T t = entityClass.newInstance();
+            fill(t, resultSet, columns);
+            return t;
+        } catch (SQLException e){
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void fill(T t, ResultSet resultSet, PropertyMapping[] columns) throws Exception {
+        for (int i = 0; i < columns.length; i++) {
+            PropertyMapping pm = columns[i];
+            if(pm == null){
+                continue;
+            }
+            Object value = pm.read(resultSet, i + 1);
+            if(value != null){
+                pm.set(t, value);
+            }
+        }
+    }
+
+    /**
+     * 获取当前ResultSet的列映射，同一个ResultSet只解析一次
+     * @param resultSet
+     * @return 下标为列序号-1，没有对应属性的列为null
+     * @throws SQLException
+     */
+    PropertyMapping[] resolve(ResultSet resultSet) throws SQLException {
+        return resolvePlan(resultSet).columns;
+    }
+
+    private ColumnPlan resolvePlan(ResultSet resultSet) throws SQLException {
+        ColumnPlan plan = plans.get();
+        if(plan != null && plan.resultSet.get() == resultSet){
+            return plan;
+        }
+        ResultSetMetaData meta = resultSet.getMetaData();
+        int count = meta.getColumnCount();
+        PropertyMapping[] columns = new PropertyMapping[count];
+        int[] generated = new int[count];
+        for (int i = 1; i <= count; i++) {
+            String columnName = meta.getColumnName(i);
+            PropertyMapping pm = mappings.get(columnName);
+            if(pm == null){
+                pm = lowerCaseMappings.get(columnName.toLowerCase());
+            }
+            columns[i - 1] = pm;
+            Integer column = generatedColumns.get(columnName.toLowerCase());
+            generated[i - 1] = column == null ? -1 : column;
+        }
+        plan = new ColumnPlan(resultSet, columns, generated);
+        plans.set(plan);
+        return plan;
+    }
+
+    // 一个ResultSet对应的列映射，弱引用避免持有已关闭的ResultSet
+    private static final class ColumnPlan {
+        final WeakReference<ResultSet> resultSet;
+        final PropertyMapping[] columns;
+        final int[] generatedColumns;
+
+        ColumnPlan(ResultSet resultSet, PropertyMapping[] columns, int[] generatedColumns) {
+            this.resultSet = new WeakReference<ResultSet>(resultSet);
+            this.columns = columns;
+            this.generatedColumns = generatedColumns;
+        }
+    }
+}
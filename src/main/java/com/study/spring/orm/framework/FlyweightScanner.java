@@ -0,0 +1,64 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 复用同一个实体对象逐行读取结果集
+ * 列映射只在开始时解析一次，每一行按下标覆盖全部已映射的属性，NULL列清空为属性的空值，
+ * 除JDBC驱动和值装箱外不再为每一行创建对象
+ * @param <T>
+ */
+final class FlyweightScanner<T> implements ResultSetExtractor<Long> {
+    private final EntityRowMapper<T> rowMapper;
+    private final T row;
+    private final RowVisitor<T> visitor;
+
+    FlyweightScanner(EntityOperation<T> op, RowVisitor<T> visitor) throws Exception {
+        this.rowMapper = (EntityRowMapper<T>) op.rowMapper;
+        this.row = op.entityClass.newInstance();
+        this.visitor = visitor;
+    }
+
+    public Long extractData(ResultSet rs) throws SQLException {
+        PropertyMapping[] columns = rowMapper.resolve(rs);
+        long rowNum = 0;
+        try {
+            while (rs.next()){
+                for (int i = 0; i < columns.length; i++) {
+                    PropertyMapping pm = columns[i];
+                    if(pm == null){
+                        continue;
+                    }
+                    Object value = pm.read(rs, i + 1);
+                    if(value != null){
+                        pm.set(row, value);
+                    } else {
+                        pm.clear(row);
+                    }
+                }
+                if(!visitor.visit(row, rowNum++)){
+                    break;
+                }
+            }
+        } catch (SQLException e){
+            throw e;
+        } catch (RuntimeException e){
+            throw e;
+        } catch (Exception e) {
+            throw new VisitorException(e);
+        }
+        return rowNum;
+    }
+
+    // 把回调的受检异常带出JdbcTemplate，由调用方还原
+    static final class VisitorException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        VisitorException(Exception cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.study.spring.orm.framework;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * H2方言，用于在内存数据库中运行测试
+ */
+public class H2Dialect implements Dialect {
+
+    public String getName() {
+        return "h2";
+    }
+
+    /**
+     * merge into ... key(pk) values，主键存在时更新全部插入的列
+     */
+    public String upsertSql(String tableName, String pkName, String[] columns, String[] updateColumns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("merge into ").append(tableName).append("(");
+        Dialects.appendColumns(sb, columns);
+        sb.append(") key(").append(pkName).append(") values (");
+        Dialects.appendPlaceholders(sb, columns.length);
+        sb.append(")");
+        return sb.toString();
+    }
+
+    public String pageSql(String sql, long offset, int limit) {
+        if(offset <= 0){
+            return sql + " limit " + limit;
+        }
+        return sql + " limit " + limit + " offset " + offset;
+    }
+
+    public String limitRows(String sql, int limit) {
+        return sql + " limit " + limit;
+    }
+
+    /**
+     * merge into不带key时按主键匹配，主键存在时更新插入的列
+     */
+    public String replaceInto() {
+        return "merge into ";
+    }
+
+    /**
+     * 指定主键列名，否则H2会把带默认值的列也作为生成的键返回
+     */
+    public PreparedStatement prepareReturningKeys(Connection connection, String sql, String pkName) throws SQLException {
+        return connection.prepareStatement(sql, new String[]{pkName});
+    }
+
+    // 内嵌数据库没有网络往返，直接使用JDBC批量
+    public boolean preferJdbcBatch() {
+        return true;
+    }
+
+    // H2没有语句大小限制，批次大小只受行数限制
+    public long maxStatementBytes() {
+        return Long.MAX_VALUE;
+    }
+
+    // 远程连接时每次取回的行数，内嵌模式下结果集较大时H2会自动缓存到磁盘
+    public int streamFetchSize() {
+        return 1000;
+    }
+
+    // 默认把null当作最小值，与MySQL一致
+    public boolean nullsFirst() {
+        return true;
+    }
+}
@@ -0,0 +1,29 @@
+package com.study.spring.orm.framework;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 按Java类型选定的JDBC读写方式，避免getObject/setObject让驱动推断类型
+ */
+public interface JdbcTypeHandler {
+
+    /**
+     * 按列下标读取值，数据库中为NULL时返回null
+     * @param rs
+     * @param index 列下标，从1开始
+     * @return
+     * @throws SQLException
+     */
+    Object read(ResultSet rs, int index) throws SQLException;
+
+    /**
+     * 绑定参数，value为null时使用setNull
+     * @param ps
+     * @param index 参数下标，从1开始
+     * @param value
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException;
+}
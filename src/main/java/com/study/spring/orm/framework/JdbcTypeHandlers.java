@@ -0,0 +1,163 @@
+package com.study.spring.orm.framework;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * ClassMappings.SUPPORTED_SQL_OBJECTS中每种类型对应的JdbcTypeHandler
+ */
+final class JdbcTypeHandlers {
+
+    private JdbcTypeHandlers(){}
+
+    static final JdbcTypeHandler BOOLEAN = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            boolean v = rs.getBoolean(index);
+            return rs.wasNull() ? null : Boolean.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.BOOLEAN);
+            } else {
+                ps.setBoolean(index, (Boolean) value);
+            }
+        }
+    };
+
+    static final JdbcTypeHandler SHORT = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            short v = rs.getShort(index);
+            return rs.wasNull() ? null : Short.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.SMALLINT);
+            } else {
+                ps.setShort(index, ((Number) value).shortValue());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler INTEGER = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            int v = rs.getInt(index);
+            return rs.wasNull() ? null : Integer.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.INTEGER);
+            } else {
+                ps.setInt(index, ((Number) value).intValue());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler LONG = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            long v = rs.getLong(index);
+            return rs.wasNull() ? null : Long.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.BIGINT);
+            } else {
+                ps.setLong(index, ((Number) value).longValue());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler FLOAT = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            float v = rs.getFloat(index);
+            return rs.wasNull() ? null : Float.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.FLOAT);
+            } else {
+                ps.setFloat(index, ((Number) value).floatValue());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler DOUBLE = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            double v = rs.getDouble(index);
+            return rs.wasNull() ? null : Double.valueOf(v);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.DOUBLE);
+            } else {
+                ps.setDouble(index, ((Number) value).doubleValue());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler STRING = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            return rs.getString(index);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.VARCHAR);
+            } else {
+                ps.setString(index, value.toString());
+            }
+        }
+    };
+
+    static final JdbcTypeHandler DATE = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            return rs.getDate(index);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.DATE);
+            } else {
+                ps.setDate(index, (Date) value);
+            }
+        }
+    };
+
+    static final JdbcTypeHandler TIMESTAMP = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            return rs.getTimestamp(index);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.TIMESTAMP);
+            } else {
+                ps.setTimestamp(index, (Timestamp) value);
+            }
+        }
+    };
+
+    static final JdbcTypeHandler BIG_DECIMAL = new JdbcTypeHandler() {
+        public Object read(ResultSet rs, int index) throws SQLException {
+            return rs.getBigDecimal(index);
+        }
+
+        public void bind(PreparedStatement ps, int index, Object value) throws SQLException {
+            if(value == null){
+                ps.setNull(index, Types.DECIMAL);
+            } else {
+                ps.setBigDecimal(index, (BigDecimal) value);
+            }
+        }
+    };
+}
@@ -0,0 +1,238 @@
+package com.study.spring.orm.framework;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 游标分页的排序键
+ * 排序键为QueryRule中的排序列加上主键，游标中保存上一页最后一行的排序键值
+ * 排序列可以为null，定位条件按方言中null的排序位置展开is null/is not null
+ */
+final class KeysetCursor {
+    private static final byte VERSION = 1;
+
+    private final String[] keys;
+    private final boolean[] ascending;
+    private final PropertyMapping[] mappings;
+    // 列值可能为null，基本类型和主键为false
+    private final boolean[] nullable;
+    // 升序时null排在最前
+    private final boolean nullsFirst;
+    // 排序键签名，防止游标用在排序不同的查询上
+    private final int signature;
+
+    private KeysetCursor(String[] keys, boolean[] ascending, PropertyMapping[] mappings, boolean[] nullable, boolean nullsFirst) {
+        this.keys = keys;
+        this.ascending = ascending;
+        this.mappings = mappings;
+        this.nullable = nullable;
+        this.nullsFirst = nullsFirst;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < keys.length; i++) {
+            crc.update((keys[i] + (ascending[i] ? " asc," : " desc,")).getBytes());
+        }
+        this.signature = (int) crc.getValue();
+    }
+
+    /**
+     * 根据查询规则生成排序键，主键不在排序列中时按升序追加在最后
+     * @param op
+     * @param queryRule
+     * @param pkName 主键列名
+     * @param nullsFirst 升序时null是否排在最前，见Dialect.nullsFirst
+     * @return
+     */
+    static KeysetCursor of(EntityOperation<?> op, QueryRule queryRule, String pkName, boolean nullsFirst) {
+        List<String> keys = new ArrayList<String>();
+        List<Boolean> ascending = new ArrayList<Boolean>();
+        for (QueryRule.Rule rule : queryRule.getRuleList()) {
+            if((rule.getType() == QueryRule.ASC_ORDER || rule.getType() == QueryRule.DESC_ORDER)
+                    && !StringUtils.isEmpty(rule.getPropertyName()) && !keys.contains(rule.getPropertyName())){
+                keys.add(rule.getPropertyName());
+                ascending.add(rule.getType() == QueryRule.ASC_ORDER);
+            }
+        }
+        if(!keys.contains(pkName)){
+            keys.add(pkName);
+            ascending.add(true);
+        }
+        String[] keyArr = keys.toArray(new String[keys.size()]);
+        boolean[] ascArr = new boolean[keyArr.length];
+        PropertyMapping[] mappings = new PropertyMapping[keyArr.length];
+        boolean[] nullable = new boolean[keyArr.length];
+        for (int i = 0; i < keyArr.length; i++) {
+            int index = op.columnIndex(keyArr[i]);
+            if(index < 0){
+                throw new IllegalArgumentException("排序列" + keyArr[i] + "不是" + op.entityClass.getName() + "的列");
+            }
+            mappings[i] = op.columns[index];
+            ascArr[i] = ascending.get(i);
+            nullable[i] = !keyArr[i].equals(pkName) && !mappings[i].getter.getReturnType().isPrimitive();
+        }
+        return new KeysetCursor(keyArr, ascArr, mappings, nullable, nullsFirst);
+    }
+
+    /**
+     * 拼接排序语句
+     */
+    void appendOrder(StringBuilder sql) {
+        sql.append(" order by ");
+        for (int i = 0; i < keys.length; i++) {
+            if(i > 0){
+                sql.append(",");
+            }
+            sql.append(keys[i]).append(ascending[i] ? " asc" : " desc");
+        }
+    }
+
+    /**
+     * 拼接“位于上一页最后一行之后”的条件
+     * 排序方向一致且不需要比较null时使用行值比较(k1,k2) > (?,?)，否则展开为or条件
+     * @param sql
+     * @param last 上一页最后一行的排序键值
+     * @param params 接收参数值
+     */
+    void appendSeek(StringBuilder sql, Object[] last, List<Object> params) {
+        if(canCompareRow(last)){
+            String op = ascending[0] ? " > " : " < ";
+            if(keys.length == 1){
+                sql.append(keys[0]).append(op).append("?");
+                params.add(last[0]);
+                return;
+            }
+            sql.append("(");
+            for (int i = 0; i < keys.length; i++) {
+                sql.append(i > 0 ? "," : "").append(keys[i]);
+            }
+            sql.append(")").append(op).append("(");
+            for (int i = 0; i < keys.length; i++) {
+                sql.append(i > 0 ? ",?" : "?");
+                params.add(last[i]);
+            }
+            sql.append(")");
+            return;
+        }
+        // (k1 > ? or (k1 = ? and k2 < ?) or ...)
+        sql.append("(");
+        boolean empty = true;
+        for (int i = 0; i < keys.length; i++) {
+            if(last[i] == null && !nullsBefore(i)){
+                // null排在最后，没有排在它之后的值
+                continue;
+            }
+            if(!empty){
+                sql.append(" or ");
+            }
+            empty = false;
+            sql.append("(");
+            for (int j = 0; j < i; j++) {
+                if(last[j] == null){
+                    sql.append(keys[j]).append(" is null and ");
+                } else {
+                    sql.append(keys[j]).append(" = ? and ");
+                    params.add(last[j]);
+                }
+            }
+            appendAfter(sql, i, last[i], params);
+            sql.append(")");
+        }
+        sql.append(empty ? "1 = 0)" : ")");
+    }
+
+    // 排在last之后的值：null在前时为非null值，null在后时还包括null
+    private void appendAfter(StringBuilder sql, int i, Object last, List<Object> params) {
+        if(last == null){
+            sql.append(keys[i]).append(" is not null");
+            return;
+        }
+        String op = ascending[i] ? " > ?" : " < ?";
+        if(nullable[i] && !nullsBefore(i)){
+            sql.append("(").append(keys[i]).append(op).append(" or ").append(keys[i]).append(" is null)");
+        } else {
+            sql.append(keys[i]).append(op);
+        }
+        params.add(last);
+    }
+
+    // 按该列的排序方向，null是否排在非null值之前
+    private boolean nullsBefore(int i) {
+        return ascending[i] == nullsFirst;
+    }
+
+    /**
+     * 行值比较时null的结果为unknown，只有排序方向一致、游标值都不为null
+     * 并且列中的null都排在游标之前（已经读过）时才能使用
+     */
+    private boolean canCompareRow(Object[] last) {
+        for (int i = 0; i < keys.length; i++) {
+            if(ascending[i] != ascending[0] || last[i] == null || (nullable[i] && !nullsBefore(i))){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 读取实体的排序键值
+     */
+    Object[] keyValues(Object entity) throws Exception {
+        Object[] values = new Object[mappings.length];
+        for (int i = 0; i < mappings.length; i++) {
+            values[i] = mappings[i].get(entity);
+        }
+        return values;
+    }
+
+    /**
+     * 把排序键值编码为游标字符串
+     */
+    String encode(Object[] values) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeInt(signature);
+            out.writeShort(values.length);
+            for (Object value : values) {
+                ValueCodec.write(out, value);
+            }
+            out.flush();
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 解析游标字符串
+     * @throws IllegalArgumentException 游标格式错误或与当前排序不一致
+     */
+    Object[] decode(String token) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+            if(in.readByte() != VERSION || in.readInt() != signature){
+                throw new IllegalArgumentException("游标与当前查询的排序不一致");
+            }
+            int size = in.readUnsignedShort();
+            if(size != keys.length){
+                throw new IllegalArgumentException("游标与当前查询的排序不一致");
+            }
+            Object[] values = new Object[size];
+            for (int i = 0; i < size; i++) {
+                values[i] = ValueCodec.read(in);
+            }
+            return values;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("无效的游标: " + token, e);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.study.spring.orm.framework;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * MySQL方言
+ */
+public class MySqlDialect implements Dialect {
+    // MySQL 5.7默认的max_allowed_packet
+    public static final long DEFAULT_MAX_ALLOWED_PACKET = 4L * 1024 * 1024;
+
+    // 连接串是否带有rewriteBatchedStatements=true
+    private final boolean rewriteBatchedStatements;
+    private final long maxAllowedPacket;
+
+    public MySqlDialect() {
+        this(false, DEFAULT_MAX_ALLOWED_PACKET);
+    }
+
+    /**
+     * @param rewriteBatchedStatements 驱动是否会把批量语句改写为多行VALUES
+     * @param maxAllowedPacket 服务器的max_allowed_packet
+     */
+    public MySqlDialect(boolean rewriteBatchedStatements, long maxAllowedPacket) {
+        this.rewriteBatchedStatements = rewriteBatchedStatements;
+        this.maxAllowedPacket = maxAllowedPacket;
+    }
+
+    public String getName() {
+        return "mysql";
+    }
+
+    /**
+     * insert ... on duplicate key update
+     * 注意表中其他唯一索引冲突时同样会转为更新
+     */
+    public String upsertSql(String tableName, String pkName, String[] columns, String[] updateColumns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("insert into ").append(tableName).append("(");
+        Dialects.appendColumns(sb, columns);
+        sb.append(") values (");
+        Dialects.appendPlaceholders(sb, columns.length);
+        sb.append(")");
+        sb.append(" on duplicate key update ");
+        if(updateColumns.length == 0){
+            // 只有主键时不需要更新，写一个无效果的赋值
+            sb.append(pkName).append(" = ").append(pkName);
+        }
+        for (int i = 0; i < updateColumns.length; i++) {
+            if(i > 0){
+                sb.append(",");
+            }
+            sb.append(updateColumns[i]).append(" = values(").append(updateColumns[i]).append(")");
+        }
+        return sb.toString();
+    }
+
+    public String pageSql(String sql, long offset, int limit) {
+        if(offset <= 0){
+            return sql + " limit " + limit;
+        }
+        return sql + " limit " + offset + "," + limit;
+    }
+
+    public String limitRows(String sql, int limit) {
+        return sql + " limit " + limit;
+    }
+
+    public String replaceInto() {
+        return "replace into ";
+    }
+
+    public PreparedStatement prepareReturningKeys(Connection connection, String sql, String pkName) throws SQLException {
+        return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    /**
+     * 开启rewriteBatchedStatements时驱动会自行合并为多行VALUES并按packet大小拆分
+     */
+    public boolean preferJdbcBatch() {
+        return rewriteBatchedStatements;
+    }
+
+    public long maxStatementBytes() {
+        return maxAllowedPacket;
+    }
+
+    /**
+     * Integer.MIN_VALUE让驱动逐行读取结果集，否则会把全部结果读入内存
+     * 结果集关闭前同一连接不能执行其他语句
+     */
+    public int streamFetchSize() {
+        return Integer.MIN_VALUE;
+    }
+
+    // MySQL把null当作最小值
+    public boolean nullsFirst() {
+        return true;
+    }
+}
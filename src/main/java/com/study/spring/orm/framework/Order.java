@@ -28,4 +28,17 @@ public class Order {
         return new Order(false, propertyName);
     }
 
+    public boolean isAscending() {
+        return ascending;
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    // 拼接为排序语句片段，如 "name asc"
+    void appendTo(StringBuilder sb) {
+        sb.append(propertyName).append(ascending ? " asc" : " desc");
+    }
+
 }
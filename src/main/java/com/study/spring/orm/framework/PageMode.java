@@ -0,0 +1,15 @@
+package com.study.spring.orm.framework;
+
+/**
+ * 分页查询时统计总数的方式
+ */
+public enum PageMode {
+    // 先查询总数，再查询当前页
+    COUNT,
+    // 不查询总数，多查一条判断是否有下一页
+    NO_COUNT,
+    // 总数和当前页使用不同的连接同时查询
+    CONCURRENT_COUNT,
+    // 总数按查询条件缓存一段时间，缓存命中时总数为估算值
+    CACHED_COUNT
+}
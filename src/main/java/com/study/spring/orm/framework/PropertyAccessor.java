@@ -0,0 +1,23 @@
+package com.study.spring.orm.framework;
+
+/**
+ * 实体属性的读写器，每个PropertyMapping构建一次，避免每次都走Method.invoke
+ */
+public interface PropertyAccessor {
+
+    /**
+     * 读取属性值
+     * @param target 实体对象
+     * @return
+     * @throws Exception
+     */
+    Object get(Object target) throws Exception;
+
+    /**
+     * 写入属性值
+     * @param target 实体对象
+     * @param value 属性值
+     * @throws Exception
+     */
+    void set(Object target, Object value) throws Exception;
+}
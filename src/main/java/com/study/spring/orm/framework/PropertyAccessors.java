@@ -0,0 +1,169 @@
+package com.study.spring.orm.framework;
+
+import net.sf.cglib.reflect.FastClass;
+import org.apache.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * 属性读写器工厂
+ * 优先使用cglib生成的FastClass按下标直接调用getter/setter，
+ * 生成失败时（如高版本JDK未开放ClassLoader.defineClass）使用MethodHandle，最后退回到反射
+ */
+public final class PropertyAccessors {
+    private static Logger log = Logger.getLogger(PropertyAccessors.class);
+
+    private static final Object[] NO_ARGS = new Object[0];
+    // setter的参数数组，FastClass调用前就取出参数，同一线程可以复用，逐行映射时不再为每次赋值创建数组
+    private static final ThreadLocal<Object[]> SETTER_ARGS = new ThreadLocal<Object[]>() {
+        protected Object[] initialValue() {
+            return new Object[1];
+        }
+    };
+
+    private PropertyAccessors(){}
+
+    public static PropertyAccessor create(Class<?> clazz, Method getter, Method setter){
+        PropertyAccessor accessor = fastClass(clazz, getter, setter);
+        if(accessor == null){
+            accessor = methodHandle(clazz, getter, setter);
+        }
+        return accessor != null ? accessor : reflect(getter, setter);
+    }
+
+    /**
+     * 通过cglib FastClass按下标调用
+     * @return 无法生成FastClass时返回null
+     */
+    static PropertyAccessor fastClass(Class<?> clazz, Method getter, Method setter){
+        try {
+            FastClass fastClass = FastClass.create(clazz);
+            int getterIndex = fastClass.getIndex(getter.getName(), getter.getParameterTypes());
+            int setterIndex = fastClass.getIndex(setter.getName(), setter.getParameterTypes());
+            if(getterIndex >= 0 && setterIndex >= 0){
+                return new FastClassAccessor(fastClass, getterIndex, setterIndex);
+            }
+        } catch (Throwable e){
+            log.debug("无法为" + clazz.getName() + "生成FastClass，尝试使用MethodHandle", e);
+        }
+        return null;
+    }
+
+    /**
+     * 通过MethodHandle调用
+     * @return 无法创建MethodHandle时返回null
+     */
+    static PropertyAccessor methodHandle(Class<?> clazz, Method getter, Method setter){
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            MethodHandle getterHandle = lookup.unreflect(getter)
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            MethodHandle setterHandle = lookup.unreflect(setter)
+                    .asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return new MethodHandleAccessor(getterHandle, setterHandle);
+        } catch (Throwable e){
+            log.debug("无法为" + clazz.getName() + "创建MethodHandle，使用反射读写属性", e);
+        }
+        return null;
+    }
+
+    // 反射调用
+    static PropertyAccessor reflect(Method getter, Method setter){
+        return new ReflectAccessor(getter, setter);
+    }
+
+    // 通过cglib FastClass下标调用
+    private static final class FastClassAccessor implements PropertyAccessor {
+        private final FastClass fastClass;
+        private final int getterIndex;
+        private final int setterIndex;
+
+        FastClassAccessor(FastClass fastClass, int getterIndex, int setterIndex) {
+            this.fastClass = fastClass;
+            this.getterIndex = getterIndex;
+            this.setterIndex = setterIndex;
+        }
+
+        public Object get(Object target) throws Exception {
+            try {
+                return fastClass.invoke(getterIndex, target, NO_ARGS);
+            } catch (InvocationTargetException e){
+                throw unwrap(e);
+            }
+        }
+
+        public void set(Object target, Object value) throws Exception {
+            Object[] args = SETTER_ARGS.get();
+            args[0] = value;
+            try {
+                fastClass.invoke(setterIndex, target, args);
+            } catch (InvocationTargetException e){
+                throw unwrap(e);
+            } finally {
+                args[0] = null;
+            }
+        }
+    }
+
+    // 通过MethodHandle调用
+    private static final class MethodHandleAccessor implements PropertyAccessor {
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+
+        MethodHandleAccessor(MethodHandle getter, MethodHandle setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public Object get(Object target) throws Exception {
+            try {
+                return (Object) getter.invokeExact(target);
+            } catch (Exception e){
+                throw e;
+            } catch (Throwable e){
+                throw new InvocationTargetException(e);
+            }
+        }
+
+        public void set(Object target, Object value) throws Exception {
+            try {
+                setter.invokeExact(target, value);
+            } catch (Exception e){
+                throw e;
+            } catch (Throwable e){
+                throw new InvocationTargetException(e);
+            }
+        }
+    }
+
+    // 反射调用，作为兜底方案
+    private static final class ReflectAccessor implements PropertyAccessor {
+        private final Method getter;
+        private final Method setter;
+
+        ReflectAccessor(Method getter, Method setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public Object get(Object target) throws Exception {
+            return getter.invoke(target);
+        }
+
+        public void set(Object target, Object value) throws Exception {
+            setter.invoke(target, value);
+        }
+    }
+
+    private static Exception unwrap(InvocationTargetException e){
+        Throwable cause = e.getTargetException();
+        if(cause instanceof Exception){
+            return (Exception)cause;
+        }
+        return e;
+    }
+}
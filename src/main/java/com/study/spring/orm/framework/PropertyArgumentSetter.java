@@ -0,0 +1,42 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 按PropertyMapping的类型绑定参数
+ * mappings按参数顺序循环使用，多行VALUES时只需传入一行的映射；
+ * 对应位置没有PropertyMapping的参数交给Spring按值推断类型
+ */
+class PropertyArgumentSetter implements PreparedStatementSetter {
+    private final PropertyMapping[] mappings;
+    private final Object[] values;
+    // 绑定values的前count个值
+    private final int count;
+
+    PropertyArgumentSetter(PropertyMapping[] mappings, Object[] values) {
+        this(mappings, values, values.length);
+    }
+
+    PropertyArgumentSetter(PropertyMapping[] mappings, Object[] values, int count) {
+        this.mappings = mappings;
+        this.values = values;
+        this.count = count;
+    }
+
+    public void setValues(PreparedStatement ps) throws SQLException {
+        int size = mappings.length;
+        for (int i = 0; i < count; i++) {
+            PropertyMapping pm = size == 0 ? null : mappings[i % size];
+            if(pm != null){
+                pm.bind(ps, i + 1, values[i]);
+            } else {
+                StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+            }
+        }
+    }
+}
@@ -2,8 +2,12 @@ package com.study.spring.orm.framework;
 
 import javax.persistence.Column;
 import javax.persistence.Id;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 
 public class PropertyMapping {
     final boolean insertable;
@@ -14,8 +18,19 @@ public class PropertyMapping {
     final Method setter;
     final Class enumClass;
     final String fieldName;
+    final PropertyAccessor accessor;
+    final JdbcTypeHandler typeHandler;
+    // 属性的空值，基本类型为0或false
+    final Object emptyValue;
 
     public PropertyMapping(Method getter, Method setter, Field field) {
+        this(getter, setter, field, null);
+    }
+
+    /**
+     * @param accessor 属性读写器，为null时按getter/setter生成
+     */
+    public PropertyMapping(Method getter, Method setter, Field field, PropertyAccessor accessor) {
         this.getter = getter;
         this.setter = setter;
         this.fieldName = field.getName();
@@ -26,23 +41,42 @@ public class PropertyMapping {
         this.updatable = column == null || column.updatable();
         this.columnName = column == null ? ClassMappings.getGetterName(getter) : ("".equals(column.name()) ? ClassMappings.getGetterName(getter) : column.name());
         this.id = field.isAnnotationPresent(Id.class);
-
+        this.accessor = accessor != null ? accessor : PropertyAccessors.create(field.getDeclaringClass(), getter, setter);
+        this.typeHandler = ClassMappings.getTypeHandler(getter.getReturnType());
+        this.emptyValue = getter.getReturnType().isPrimitive() ? Array.get(Array.newInstance(getter.getReturnType(), 1), 0) : null;
     }
 
-    @SuppressWarnings("unchecked")
     Object get(Object target) throws Exception{
-        Object r = getter.invoke(target);
-        return enumClass == null;
+        Object r = accessor.get(target);
+        if(enumClass != null && r instanceof Enum){
+            return ((Enum) r).name();
+        }
+        return r;
     }
 
     @SuppressWarnings("unchecked")
     void set(Object target, Object value) throws Exception{
-        if(enumClass != null && value != null){
+        if(enumClass != null && value instanceof String){
             value = Enum.valueOf(enumClass, (String)value);
         }
 
         if(value != null){
-            setter.invoke(target, setter.getParameterTypes()[0].cast(value));
+            accessor.set(target, value);
         }
     }
+
+    // 把属性恢复为空值，用于复用的实体对象
+    void clear(Object target) throws Exception{
+        accessor.set(target, emptyValue);
+    }
+
+    // 按列下标读取当前属性类型的值
+    Object read(ResultSet rs, int index) throws SQLException{
+        return typeHandler.read(rs, index);
+    }
+
+    // 按当前属性类型绑定参数
+    void bind(PreparedStatement ps, int index, Object value) throws SQLException{
+        typeHandler.bind(ps, index, value);
+    }
 }
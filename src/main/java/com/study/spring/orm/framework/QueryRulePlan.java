@@ -0,0 +1,162 @@
+package com.study.spring.orm.framework;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.commons.lang.StringUtils;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 编译后的QueryRule查询计划
+ * 按QueryRule的结构（规则类型、列名、and/or、参数个数及是否为null）生成指纹，
+ * 相同结构只用QueryRuleSqlBuilder生成一次where/order语句，之后每次只收集参数值
+ */
+public final class QueryRulePlan {
+    // 缓存的结构数上限，超过后新的结构不再缓存
+    private static final int MAX_PLANS = 4096;
+    private static final ConcurrentMap<String, QueryRulePlan> plans = new ConcurrentHashMap<String, QueryRulePlan>();
+
+    // 不含where关键字的查询条件，可能为空
+    private final String conditionSql;
+    // 为空或以" where "开头
+    private final String whereSql;
+    // 为" "或以" order by "开头
+    private final String orderSql;
+
+    private QueryRulePlan(String conditionSql, String whereSql, String orderSql) {
+        this.conditionSql = conditionSql;
+        this.whereSql = whereSql;
+        this.orderSql = orderSql;
+    }
+
+    public String getConditionSql() {
+        return conditionSql;
+    }
+
+    public String getWhereSql() {
+        return whereSql;
+    }
+
+    public String getOrderSql() {
+        return orderSql;
+    }
+
+    /**
+     * 获取查询计划并收集参数值
+     * @param queryRule
+     * @param values 接收参数值，顺序与where语句中的?一致
+     * @return
+     */
+    public static QueryRulePlan prepare(QueryRule queryRule, List<Object> values) {
+        String fingerprint = collect(queryRule, values);
+        QueryRulePlan plan = plans.get(fingerprint);
+        if(plan == null){
+            plan = compile(queryRule);
+            if(plans.size() < MAX_PLANS){
+                plans.putIfAbsent(fingerprint, plan);
+            }
+        }
+        return plan;
+    }
+
+    private static QueryRulePlan compile(QueryRule queryRule) {
+        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(queryRule);
+        String ws = builder.getConditionSql();
+        String whereSql = "".equals(ws) ? ws : (" where " + ws);
+        String orderSql = builder.getOrderSql();
+        orderSql = StringUtils.isEmpty(orderSql) ? " " : (" order by " + orderSql);
+        return new QueryRulePlan(ws, whereSql, orderSql);
+    }
+
+    /**
+     * 生成结构指纹，同时按QueryRuleSqlBuilder的顺序收集参数值
+     * 跳过规则和参数的条件必须与QueryRuleSqlBuilder保持一致
+     */
+    private static String collect(QueryRule queryRule, List<Object> values) {
+        SqlAssembler assembler = SqlAssembler.open();
+        try {
+            return collect(queryRule, values, assembler.head);
+        } finally {
+            assembler.close();
+        }
+    }
+
+    private static String collect(QueryRule queryRule, List<Object> values, StringBuilder sb) {
+        for (QueryRule.Rule rule : queryRule.getRuleList()) {
+            Object[] ruleValues = rule.getValues();
+            String propertyName = rule.getPropertyName();
+            sb.append(rule.getType()).append(':').append(rule.getAndOr()).append(':');
+            sb.append(propertyName == null ? -1 : propertyName.length()).append(':');
+            if(propertyName != null){
+                sb.append(propertyName);
+            }
+            switch (rule.getType()){
+                case QueryRule.BETWEEN:
+                    if(ArrayUtils.isEmpty(ruleValues) || ruleValues.length < 2){
+                        sb.append('-');
+                        break;
+                    }
+                    addValue(sb, values, ruleValues[0]);
+                    addValue(sb, values, ruleValues[1]);
+                    break;
+                case QueryRule.LIKE:
+                    if(ArrayUtils.isEmpty(ruleValues)){
+                        sb.append('-');
+                        break;
+                    }
+                    addValue(sb, values, "%" + ruleValues[0] + "%");
+                    break;
+                case QueryRule.EQ:
+                case QueryRule.NOTEQ:
+                case QueryRule.GT:
+                case QueryRule.GE:
+                case QueryRule.LT:
+                case QueryRule.LE:
+                    if(ArrayUtils.isEmpty(ruleValues)){
+                        sb.append('-');
+                        break;
+                    }
+                    addValue(sb, values, ruleValues[0]);
+                    break;
+                case QueryRule.IN:
+                case QueryRule.NOTIN:
+                    if(ArrayUtils.isEmpty(ruleValues)){
+                        sb.append('-');
+                        break;
+                    }
+                    if(ruleValues.length == 1 && ruleValues[0] instanceof List){
+                        sb.append('L');
+                        for (Object value : (List<?>) ruleValues[0]) {
+                            addValue(sb, values, value);
+                        }
+                    } else {
+                        for (Object value : ruleValues) {
+                            addValue(sb, values, value);
+                        }
+                    }
+                    break;
+                case QueryRule.ISEMPTY:
+                case QueryRule.ISNOTEMPTY:
+                    // QueryRuleSqlBuilder把''作为参数绑定
+                    addValue(sb, values, "''");
+                    break;
+                default:
+                    // is null、is not null、排序等规则没有参数
+                    break;
+            }
+            sb.append(';');
+        }
+        return sb.toString();
+    }
+
+    // null参数不会生成?，所以是否为null属于结构的一部分
+    private static void addValue(StringBuilder sb, List<Object> values, Object value) {
+        if(value == null){
+            sb.append('n');
+        } else {
+            sb.append('v');
+            values.add(value);
+        }
+    }
+}
@@ -7,18 +7,15 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * 根据QueryRule自动构建sql语句
+ * 有参数的条件依次拼接在前，无参数的条件（如is null）倒序拼接在后
+ * 列名中不允许出现order by
  */
 public class QueryRuleSqlBuilder {
-    // 记录参数所在的位置
-    private int CURR_INDEX = 0;
-
-    // 保存列名列表
-    private List<String> properties;
+    // 拼接where语句：head保存有参数的条件，tail保存无参数的条件
+    private SqlAssembler where;
 
     // 保存参数值列表
     private List<Object> values;
@@ -26,7 +23,12 @@ public class QueryRuleSqlBuilder {
     // 保存排序规则列表
     private List<Order> orders;
 
+    // 第一个条件前and/or的长度，拼装时据此得到不含开头and/or的条件
+    private int headLead;
+    private int tailLead;
+
     private String whereSql = "";
+    private String conditionSql = "";
     private String orderSql = "";
     private Object[] valueArr = new Object[]{};
     private Map<Object, Object> valueMap = new HashMap<Object, Object>();
@@ -39,6 +41,14 @@ public class QueryRuleSqlBuilder {
         return whereSql;
     }
 
+    /**
+     * 获得去掉开头and/or的查询条件
+     * @return
+     */
+    String getConditionSql() {
+        return conditionSql;
+    }
+
     /**
      * 获得排序条件
      * @return
@@ -68,11 +78,18 @@ public class QueryRuleSqlBuilder {
      * @param queryRule
      */
     public QueryRuleSqlBuilder(QueryRule queryRule) {
-        CURR_INDEX = 0;
-        properties = new ArrayList<String>();
         values = new ArrayList<Object>();
         orders = new ArrayList<Order>();
+        where = SqlAssembler.open();
+        try {
+            build(queryRule);
+        } finally {
+            where.close();
+            where = null;
+        }
+    }
 
+    private void build(QueryRule queryRule) {
         for (QueryRule.Rule rule : queryRule.getRuleList()) {
             switch (rule.getType()){
                 case QueryRule.BETWEEN:
@@ -154,49 +171,43 @@ public class QueryRuleSqlBuilder {
      * 拼装排序语句
      */
     private void appendOrderSql() {
-        StringBuffer orderSql = new StringBuffer();
-        for (int i = 0; i < orders.size(); i++) {
-            if(i > 0 && i < orders.size()){
-                orderSql.append(",");
+        if(orders.isEmpty()){
+            return;
+        }
+        SqlAssembler assembler = SqlAssembler.open();
+        try {
+            StringBuilder orderSql = assembler.head;
+            for (int i = 0; i < orders.size(); i++) {
+                if(i > 0){
+                    orderSql.append(",");
+                }
+                orders.get(i).appendTo(orderSql);
             }
-            orderSql.append(orders.get(i).toString());
+            this.orderSql = orderSql.toString();
+        } finally {
+            assembler.close();
         }
-        this.orderSql = removeSelect(removeOrders(orderSql.toString()));
     }
 
     /**
      * 拼装 where 语句
      */
     private void appendWhereSql() {
-        StringBuffer whereSql = new StringBuffer();
-        for (String property : properties) {
-            whereSql.append(property);
-        }
-        this.whereSql= removeSelect(removeOrders(whereSql.toString()));
-
-    }
-
-    private String removeSelect(String sql) {
-        if(sql.toLowerCase().matches("from\\s+")){
-            int beginPos = sql.toLowerCase().indexOf("from");
-            return sql.substring(beginPos);
-        } else {
-            return sql;
-        }
+        int lead = where.head.length() > 0 ? headLead : tailLead;
+        where.head.append(where.tail);
+        this.whereSql = where.head.toString();
+        this.conditionSql = where.head.substring(lead);
     }
 
-    private String removeOrders(String sql) {
-        Pattern p = Pattern.compile("order\\s*by[\\w|\\W|\\s|\\S]*", Pattern.CASE_INSENSITIVE);
-        Matcher m = p.matcher(sql);
-        StringBuffer sb = new StringBuffer();
-        while (m.find()){
-            m.appendReplacement(sb, "");
+    /**
+     * 列名中出现order by时直接拒绝，截掉其后的内容会悄悄丢掉后面的条件
+     */
+    private static void checkColumn(String key) {
+        if(key != null && SqlAssembler.indexOfOrderBy(key, false) >= 0){
+            throw new IllegalArgumentException("列名中不允许出现order by: " + key);
         }
-        m.appendTail(sb);
-        return sb.toString();
     }
 
-
     /**
      * 处理 order by
      * @param rule
@@ -204,11 +215,13 @@ public class QueryRuleSqlBuilder {
     private void processOrder(QueryRule.Rule rule) {
         switch (rule.getType()){
             case QueryRule.ASC_ORDER:
+                checkColumn(rule.getPropertyName());
                 if(!StringUtils.isEmpty(rule.getPropertyName())){
                     orders.add(Order.asc(rule.getPropertyName()));
                 }
                 break;
             case QueryRule.DESC_ORDER:
+                checkColumn(rule.getPropertyName());
                 if(!StringUtils.isEmpty(rule.getPropertyName())){
                     orders.add(Order.desc(rule.getPropertyName()));
                 }
@@ -418,11 +431,19 @@ public class QueryRuleSqlBuilder {
      * @param suffix 值后缀
      */
     private void add(int andOr, String key, String split, String prefix, Object value, String suffix) {
+        checkColumn(key);
         String andOrStr = (0 == andOr ? "" : (QueryRule.AND == andOr ? " and " : " or "));
-        properties.add(CURR_INDEX, andOrStr + key + " " + split + prefix + (null != value ? " ? " : " ") + suffix);
         if(value != null){
-            values.add(CURR_INDEX, value);
-            CURR_INDEX++;
+            if(where.head.length() == 0){
+                headLead = andOrStr.length();
+            }
+            where.head.append(andOrStr).append(key).append(' ').append(split).append(prefix).append(" ? ").append(suffix);
+            values.add(value);
+        } else {
+            // 无参数的条件插入到tail最前面
+            tailLead = andOrStr.length();
+            where.tail.insert(0, suffix).insert(0, ' ').insert(0, prefix).insert(0, split)
+                    .insert(0, ' ').insert(0, key).insert(0, andOrStr);
         }
     }
 }
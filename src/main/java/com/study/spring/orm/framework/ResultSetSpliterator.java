@@ -0,0 +1,112 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.SQLExceptionTranslator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 按需读取结果集的Spliterator，每次只转换一行
+ * 结果集读完或Stream关闭时释放语句和连接；没有读完时必须关闭Stream，否则连接不会归还
+ * @param <E>
+ */
+final class ResultSetSpliterator<E> extends Spliterators.AbstractSpliterator<E> implements Runnable {
+    private final DataSource dataSource;
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final ResultSet resultSet;
+    private final RowMapper<E> rowMapper;
+    private final SQLExceptionTranslator translator;
+    private final String sql;
+    private int rowNum;
+    private boolean closed;
+
+    private ResultSetSpliterator(JdbcTemplate jdbcTemplate, Connection connection, PreparedStatement statement,
+                                 ResultSet resultSet, RowMapper<E> rowMapper, String sql) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED);
+        this.dataSource = jdbcTemplate.getDataSource();
+        this.connection = connection;
+        this.statement = statement;
+        this.resultSet = resultSet;
+        this.rowMapper = rowMapper;
+        this.translator = jdbcTemplate.getExceptionTranslator();
+        this.sql = sql;
+    }
+
+    /**
+     * 执行查询并返回逐行读取的Stream
+     * @param jdbcTemplate 提供数据源、超时设置和异常转换
+     * @param sql
+     * @param args 参数
+     * @param fetchSize 驱动每次读取的行数
+     * @param rowMapper
+     * @return
+     */
+    static <E> Stream<E> open(JdbcTemplate jdbcTemplate, String sql, Object[] args, int fetchSize, RowMapper<E> rowMapper) {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        PreparedStatement statement = null;
+        ResultSet resultSet = null;
+        try {
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            DataSourceUtils.applyTimeout(statement, dataSource, jdbcTemplate.getQueryTimeout());
+            new ArgumentPreparedStatementSetter(args).setValues(statement);
+            resultSet = statement.executeQuery();
+            ResultSetSpliterator<E> spliterator = new ResultSetSpliterator<E>(jdbcTemplate, connection, statement, resultSet, rowMapper, sql);
+            return StreamSupport.stream(spliterator, false).onClose(spliterator);
+        } catch (SQLException e) {
+            JdbcUtils.closeResultSet(resultSet);
+            JdbcUtils.closeStatement(statement);
+            DataSourceUtils.releaseConnection(connection, dataSource);
+            throw jdbcTemplate.getExceptionTranslator().translate("stream", sql, e);
+        }
+    }
+
+    public boolean tryAdvance(Consumer<? super E> action) {
+        if(closed){
+            return false;
+        }
+        E row;
+        try {
+            if(!resultSet.next()){
+                close();
+                return false;
+            }
+            row = rowMapper.mapRow(resultSet, rowNum++);
+        } catch (SQLException e) {
+            close();
+            throw translator.translate("stream", sql, e);
+        }
+        action.accept(row);
+        return true;
+    }
+
+    // Stream.onClose
+    public void run() {
+        close();
+    }
+
+    private void close() {
+        if(closed){
+            return;
+        }
+        closed = true;
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+}
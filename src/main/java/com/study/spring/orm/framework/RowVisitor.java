@@ -0,0 +1,18 @@
+package com.study.spring.orm.framework;
+
+/**
+ * 扫描查询结果的回调
+ * 每一行传入的都是同一个实体对象，回调返回后会被下一行的数据覆盖，不能保存引用
+ * @param <T>
+ */
+public interface RowVisitor<T> {
+
+    /**
+     * 访问一行数据
+     * @param row 复用的实体对象，数据库中为NULL的列为null，基本类型为0或false
+     * @param rowNum 行号，从0开始
+     * @return 返回false时停止扫描
+     * @throws Exception
+     */
+    boolean visit(T row, long rowNum) throws Exception;
+}
@@ -0,0 +1,179 @@
+package com.study.spring.orm.framework;
+
+/**
+ * SQL拼接工具
+ * 每个线程复用一组StringBuilder，按语句结构顺序拼接，不再事后用正则删改文本
+ */
+final class SqlAssembler {
+    // 超过该长度的缓冲区用完后释放，避免线程长期持有大对象
+    private static final int MAX_RETAINED = 8192;
+
+    private static final ThreadLocal<SqlAssembler> local = new ThreadLocal<SqlAssembler>() {
+        @Override
+        protected SqlAssembler initialValue() {
+            return new SqlAssembler();
+        }
+    };
+
+    // 主缓冲区
+    final StringBuilder head = new StringBuilder(256);
+    // 辅助缓冲区，最终拼接在head之后
+    final StringBuilder tail = new StringBuilder(64);
+    private boolean inUse;
+
+    private SqlAssembler(){}
+
+    /**
+     * 获取当前线程的拼接器，已被占用（嵌套使用）时返回新的实例
+     * @return
+     */
+    static SqlAssembler open() {
+        SqlAssembler assembler = local.get();
+        if(assembler.inUse){
+            assembler = new SqlAssembler();
+        }
+        assembler.inUse = true;
+        return assembler;
+    }
+
+    // 拼接结果
+    String result() {
+        if(tail.length() == 0){
+            return head.toString();
+        }
+        return new StringBuilder(head.length() + tail.length()).append(head).append(tail).toString();
+    }
+
+    void close() {
+        reset(head);
+        reset(tail);
+        inUse = false;
+    }
+
+    private static void reset(StringBuilder sb) {
+        sb.setLength(0);
+        if(sb.capacity() > MAX_RETAINED){
+            sb.trimToSize();
+        }
+    }
+
+    /**
+     * 在sql中查找关键字，忽略大小写，要求关键字前后不是标识符字符
+     * @param sql
+     * @param keyword 小写关键字
+     * @param from 开始位置
+     * @param topLevel 为true时跳过括号内和引号内的内容
+     * @return 找不到返回-1
+     */
+    static int indexOfKeyword(CharSequence sql, String keyword, int from, boolean topLevel) {
+        int depth = 0;
+        char quote = 0;
+        int length = sql.length();
+        for (int i = from; i < length; i++) {
+            char c = sql.charAt(i);
+            if(topLevel){
+                if(quote != 0){
+                    if(c == quote){
+                        quote = 0;
+                    }
+                    continue;
+                }
+                if(c == '\'' || c == '"' || c == '`'){
+                    quote = c;
+                    continue;
+                }
+                if(c == '('){
+                    depth++;
+                    continue;
+                }
+                if(c == ')'){
+                    depth--;
+                    continue;
+                }
+                if(depth > 0){
+                    continue;
+                }
+            }
+            if(regionMatches(sql, i, keyword)
+                    && (i == 0 || !isIdentifierChar(sql.charAt(i - 1)))
+                    && (i + keyword.length() >= length || !isIdentifierChar(sql.charAt(i + keyword.length())))){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 查找"order by"，两个单词之间允许任意空白（包括没有空白）
+     * @param sql
+     * @param topLevel 为true时只找最外层
+     * @return 找不到返回-1
+     */
+    static int indexOfOrderBy(CharSequence sql, boolean topLevel) {
+        int from = 0;
+        int length = sql.length();
+        while (from < length) {
+            int i = topLevel ? indexOfKeyword(sql, "order", from, true) : indexOfIgnoreCase(sql, "order", from);
+            if(i < 0){
+                return -1;
+            }
+            int j = i + 5;
+            while (j < length && Character.isWhitespace(sql.charAt(j))) {
+                j++;
+            }
+            if(regionMatches(sql, j, "by")){
+                return i;
+            }
+            from = i + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 把查询语句改写为count语句：select count(1) + 最外层from之后、order by之前的部分
+     * @param sql
+     * @return
+     */
+    static String countSql(String sql) {
+        int from = indexOfKeyword(sql, "from", 0, true);
+        if(from < 0){
+            throw new IllegalArgumentException("no from clause in sql: " + sql);
+        }
+        int orderBy = indexOfOrderBy(sql, true);
+        int end = orderBy > from ? orderBy : sql.length();
+        SqlAssembler assembler = open();
+        try {
+            assembler.head.append("select count(1) ").append(sql, from, end);
+            return assembler.result();
+        } finally {
+            assembler.close();
+        }
+    }
+
+    static int indexOfIgnoreCase(CharSequence sql, String keyword, int from) {
+        int last = sql.length() - keyword.length();
+        for (int i = from; i <= last; i++) {
+            if(regionMatches(sql, i, keyword)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // keyword须为小写
+    private static boolean regionMatches(CharSequence sql, int offset, String keyword) {
+        if(offset + keyword.length() > sql.length()){
+            return false;
+        }
+        for (int k = 0; k < keyword.length(); k++) {
+            if(Character.toLowerCase(sql.charAt(offset + k)) != keyword.charAt(k)){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentifierChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+}
@@ -0,0 +1,203 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * 缓存的单表语句模板：SQL文本和按参数顺序排列的绑定方式
+ * 由EntityOperation按“语句类型+方言+表名+主键+列位图”缓存，相同列组合的写操作不再拼接SQL
+ */
+public class SqlTemplate {
+    public static final int INSERT = 1;
+    public static final int REPLACE = 2;
+    public static final int UPDATE = 3;
+    public static final int SELECT_BY_PK = 4;
+    public static final int DELETE_BY_PK = 5;
+    // REPLACE和UPSERT由方言生成，主键不存在时插入，存在时更新
+    public static final int UPSERT = 6;
+
+    final String sql;
+    // 列部分的参数在EntityOperation.columns中的下标
+    final int[] columnIndexes;
+    // 全部参数的绑定方式，最后一个为主键（如果有）
+    final PropertyMapping[] binders;
+
+    SqlTemplate(String sql, int[] columnIndexes, PropertyMapping[] binders) {
+        this.sql = sql;
+        this.columnIndexes = columnIndexes;
+        this.binders = binders;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * 绑定参数
+     * @param ps
+     * @param rowValues 实体全部列值，下标与EntityOperation.columns一致
+     * @param pkValue 主键值，语句不含主键条件时忽略
+     * @throws SQLException
+     */
+    void bind(PreparedStatement ps, Object[] rowValues, Object pkValue) throws SQLException {
+        int i = 0;
+        for (; i < columnIndexes.length; i++) {
+            bind(ps, i, rowValues[columnIndexes[i]]);
+        }
+        if(i < binders.length){
+            bind(ps, i, pkValue);
+        }
+    }
+
+    private void bind(PreparedStatement ps, int i, Object value) throws SQLException {
+        PropertyMapping pm = binders[i];
+        if(pm != null){
+            pm.bind(ps, i + 1, value);
+        } else {
+            StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, value);
+        }
+    }
+
+    PreparedStatementSetter setter(final Object[] rowValues, final Object pkValue) {
+        return new PreparedStatementSetter() {
+            public void setValues(PreparedStatement ps) throws SQLException {
+                bind(ps, rowValues, pkValue);
+            }
+        };
+    }
+
+    /**
+     * 生成模板
+     * @param kind 语句类型
+     * @param dialect 方言，只有REPLACE和UPSERT使用
+     * @param tableName
+     * @param pkName 主键列名，INSERT/REPLACE时忽略
+     * @param columns 参与的列
+     * @param op
+     * @return
+     */
+    static SqlTemplate build(int kind, Dialect dialect, String tableName, String pkName, BitSet columns, EntityOperation<?> op) {
+        int[] columnIndexes = new int[columns.cardinality()];
+        int n = 0;
+        for (int i = columns.nextSetBit(0); i >= 0; i = columns.nextSetBit(i + 1)) {
+            columnIndexes[n++] = i;
+        }
+        boolean withPk = kind == UPDATE || kind == SELECT_BY_PK || kind == DELETE_BY_PK;
+        PropertyMapping[] binders = new PropertyMapping[columnIndexes.length + (withPk ? 1 : 0)];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            binders[i] = op.columns[columnIndexes[i]];
+        }
+        if(withPk){
+            binders[columnIndexes.length] = op.mappings.get(pkName);
+        }
+
+        StringBuilder sb = new StringBuilder();
+        switch (kind){
+            case INSERT:
+            case REPLACE:
+                sb.append(kind == INSERT ? "insert into " : dialect.replaceInto()).append(tableName).append("(");
+                appendColumns(sb, columnIndexes, op, ",");
+                sb.append(") values (");
+                for (int i = 0; i < columnIndexes.length; i++) {
+                    if(i > 0){
+                        sb.append(",");
+                    }
+                    sb.append("?");
+                }
+                sb.append(")");
+                break;
+            case UPDATE:
+                sb.append("update ").append(tableName).append(" set ");
+                for (int i = 0; i < columnIndexes.length; i++) {
+                    if(i > 0){
+                        sb.append(",");
+                    }
+                    sb.append(op.columnNames[columnIndexes[i]]).append(" = ?");
+                }
+                sb.append(" where ").append(pkName).append(" = ?");
+                break;
+            case SELECT_BY_PK:
+                sb.append("select * from ").append(tableName).append(" where ").append(pkName).append(" = ?");
+                break;
+            case DELETE_BY_PK:
+                sb.append("delete from ").append(tableName).append(" where ").append(pkName).append(" = ?");
+                break;
+            case UPSERT:
+                String[] names = new String[columnIndexes.length];
+                List<String> updateNames = new ArrayList<String>(names.length);
+                for (int i = 0; i < columnIndexes.length; i++) {
+                    names[i] = op.columnNames[columnIndexes[i]];
+                    if(!names[i].equals(pkName)){
+                        updateNames.add(names[i]);
+                    }
+                }
+                sb.append(dialect.upsertSql(tableName, pkName, names, updateNames.toArray(new String[updateNames.size()])));
+                break;
+            default:
+                throw new IllegalArgumentException("kind " + kind + " not supported.");
+        }
+        return new SqlTemplate(sb.toString(), columnIndexes, binders);
+    }
+
+    private static void appendColumns(StringBuilder sb, int[] columnIndexes, EntityOperation<?> op, String split) {
+        for (int i = 0; i < columnIndexes.length; i++) {
+            if(i > 0){
+                sb.append(split);
+            }
+            sb.append(op.columnNames[columnIndexes[i]]);
+        }
+    }
+
+    // 缓存键
+    static final class Key {
+        final int kind;
+        // 方言名称，与方言无关的语句为null
+        final String dialect;
+        final String tableName;
+        final String pkName;
+        final BitSet columns;
+        final int hash;
+
+        Key(int kind, String dialect, String tableName, String pkName, BitSet columns) {
+            this.kind = kind;
+            this.dialect = dialect;
+            this.tableName = tableName;
+            this.pkName = pkName;
+            this.columns = columns;
+            int h = kind;
+            h = 31 * h + (dialect == null ? 0 : dialect.hashCode());
+            h = 31 * h + tableName.hashCode();
+            h = 31 * h + (pkName == null ? 0 : pkName.hashCode());
+            h = 31 * h + columns.hashCode();
+            this.hash = h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return kind == key.kind && hash == key.hash
+                    && (dialect == null ? key.dialect == null : dialect.equals(key.dialect))
+                    && tableName.equals(key.tableName)
+                    && (pkName == null ? key.pkName == null : pkName.equals(key.pkName))
+                    && columns.equals(key.columns);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.study.spring.orm.framework;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * 列值的二进制编码，每个值前加一个字节的类型标记
+ * 支持ClassMappings中的基本类型、BigDecimal、日期类型、枚举（按名称）和byte[]，游标和写日志共用
+ */
+final class ValueCodec {
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LONG = 2;
+    private static final byte INTEGER = 3;
+    private static final byte SHORT = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte FLOAT = 6;
+    private static final byte BIG_DECIMAL = 7;
+    private static final byte TIMESTAMP = 8;
+    private static final byte SQL_DATE = 9;
+    private static final byte DATE = 10;
+    private static final byte BOOLEAN = 11;
+    // writeUTF最多写65535字节，超过时按长度+UTF-8写入
+    private static final byte LONG_STRING = 12;
+    private static final byte BYTES = 13;
+
+    // 不超过该长度的字符串按UTF-8编码一定不超过65535字节
+    private static final int MAX_UTF_CHARS = 65535 / 3;
+
+    private ValueCodec() {
+    }
+
+    static void write(DataOutput out, Object value) throws IOException {
+        if(value == null){
+            out.writeByte(NULL);
+        } else if(value instanceof String){
+            String s = (String) value;
+            if(s.length() <= MAX_UTF_CHARS){
+                out.writeByte(STRING);
+                out.writeUTF(s);
+            } else {
+                out.writeByte(LONG_STRING);
+                writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+            }
+        } else if(value instanceof byte[]){
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) value);
+        } else if(value instanceof Long){
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if(value instanceof Integer){
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if(value instanceof Short){
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if(value instanceof Double){
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if(value instanceof Float){
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if(value instanceof BigDecimal){
+            out.writeByte(BIG_DECIMAL);
+            out.writeUTF(value.toString());
+        } else if(value instanceof Timestamp){
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if(value instanceof java.sql.Date){
+            out.writeByte(SQL_DATE);
+            out.writeLong(((java.sql.Date) value).getTime());
+        } else if(value instanceof Date){
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if(value instanceof Boolean){
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            throw new IllegalArgumentException("不支持的值类型: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * 该类型的属性值能否编码，枚举按名称编码
+     * @param type 属性类型
+     * @return
+     */
+    static boolean supports(Class<?> type) {
+        return type == String.class || type == byte[].class || type.isEnum()
+                || type == long.class || type == Long.class || type == int.class || type == Integer.class
+                || type == short.class || type == Short.class || type == double.class || type == Double.class
+                || type == float.class || type == Float.class || type == boolean.class || type == Boolean.class
+                || type == BigDecimal.class || Date.class.isAssignableFrom(type);
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static Object read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type){
+            case NULL:
+                return null;
+            case STRING:
+                return in.readUTF();
+            case LONG:
+                return in.readLong();
+            case INTEGER:
+                return in.readInt();
+            case SHORT:
+                return in.readShort();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readUTF());
+            case TIMESTAMP:
+                Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                return timestamp;
+            case SQL_DATE:
+                return new java.sql.Date(in.readLong());
+            case DATE:
+                return new Date(in.readLong());
+            case BOOLEAN:
+                return in.readBoolean();
+            case LONG_STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case BYTES:
+                return readBytes(in);
+            default:
+                throw new IllegalArgumentException("无效的值类型: " + type);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+
+import javax.core.common.jdbc.datasource.RoutingContext;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 异步写缓冲
+ * insert/update/delete先放入有界的内存队列，同一主键的多次写入合并为一次（见merge），
+ * 后台线程在积累到batchSize条或超过flushInterval时批量写入数据库
+ * 队列满时写入方阻塞等待；flush()返回时之前提交的写入都已执行完成
+ * 关闭后不再接收写入，insert/update/delete等剩余数据写完后返回false，由调用方改为同步写入
+ * 提交后到写入前不要再修改实体，数据库中的数据在写入前不会变化
+ * @param <T>
+ */
+public class WriteBehindBuffer<T extends Serializable> {
+    private static final Logger log = Logger.getLogger(WriteBehindBuffer.class);
+
+    // 写入类型，按此顺序执行
+    public enum Kind {
+        DELETE,
+        // 修改后又插入，记录可能存在，按upsert写入
+        UPSERT,
+        INSERT,
+        UPDATE
+    }
+
+    /**
+     * 批量写入失败时的回调，失败的实体不会重试，可以在回调中重新提交
+     */
+    public interface FailureListener<T> {
+        void onFailure(Kind kind, List<T> entities, Exception e);
+    }
+
+    private final BaseDaoSupport<T, ?> dao;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final FailureListener<T> listener;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Condition ready = lock.newCondition();
+    // 保证同一时间只有一个线程在写入，flush()借此等待进行中的写入完成
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private LinkedHashMap<Object, Entry<T>> pending = new LinkedHashMap<Object, Entry<T>>();
+    private volatile boolean closed;
+    // close()写完剩余数据
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final Thread flusher;
+
+    /**
+     * @param dao
+     * @param capacity 队列中最多的待写入条数
+     * @param batchSize 积累到多少条时立即写入
+     * @param flushIntervalMillis 最长等待多久写入一次
+     * @param listener 写入失败时的回调，为null时只记录日志
+     */
+    public WriteBehindBuffer(BaseDaoSupport<T, ?> dao, int capacity, int batchSize, long flushIntervalMillis, FailureListener<T> listener) {
+        if(capacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0){
+            throw new IllegalArgumentException("capacity、batchSize和flushIntervalMillis必须大于0");
+        }
+        this.dao = dao;
+        this.capacity = capacity;
+        this.batchSize = Math.min(batchSize, capacity);
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.listener = listener;
+        this.flusher = new Thread(new Runnable() {
+            public void run() {
+                runFlusher();
+            }
+        }, "write-behind-" + dao.getTableName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * @param entity
+     * @return 缓冲已关闭时返回false，实体没有放入缓冲
+     * @throws Exception
+     */
+    public boolean insert(T entity) throws Exception {
+        return submit(Kind.INSERT, entity);
+    }
+
+    public boolean update(T entity) throws Exception {
+        return submit(Kind.UPDATE, entity);
+    }
+
+    public boolean delete(T entity) throws Exception {
+        return submit(Kind.DELETE, entity);
+    }
+
+    /**
+     * 当前等待写入的条数
+     * @return
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 放入缓冲，缓冲已关闭时等待剩余数据写完后返回false，
+     * 调用方此时再同步写入不会被之前缓冲的同一主键的写入覆盖
+     */
+    boolean submit(Kind kind, T entity) throws Exception {
+        Object pkValue = dao.pkValue(entity);
+        if(pkValue == null && kind != Kind.INSERT){
+            throw new IllegalArgumentException("修改和删除时主键不能为空");
+        }
+        String dataSource = RoutingContext.current();
+        // 没有主键的插入不能合并
+        Object key = pkValue == null ? new Object() : new Key(dataSource, pkValue);
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                if(closed){
+                    break;
+                }
+                Entry<T> previous = pending.get(key);
+                if(previous != null){
+                    merge(previous, kind, entity);
+                    return true;
+                }
+                if(pending.size() < capacity){
+                    break;
+                }
+                ready.signal();
+                notFull.await();
+            }
+            if(!closed){
+                pending.put(key, new Entry<T>(kind, entity, dataSource));
+                if(pending.size() >= batchSize){
+                    ready.signal();
+                }
+                return true;
+            }
+        } finally {
+            lock.unlock();
+        }
+        terminated.await();
+        return false;
+    }
+
+    /**
+     * 合并同一主键的两次写入
+     * 修改只写非空列，所以修改合并到之前的插入或修改时按列合并：后一次的非空列覆盖前一次，
+     * 合并结果放在新建的实体中，不修改调用方的对象。以下情况与依次执行的结果一致：
+     * 1. 插入/修改后再修改：按列合并
+     * 2. 删除后再修改：修改不会生效，保持删除
+     * 3. 任何写入后再删除：只删除
+     * 4. 删除后再插入：写入时先删除再插入
+     * 依次执行会失败的情况按最后一次写入处理：重复插入只插入最后一次的实体，修改后再插入按upsert写入
+     */
+    private void merge(Entry<T> previous, Kind next, T entity) throws Exception {
+        switch (next){
+            case DELETE:
+                previous.kind = Kind.DELETE;
+                previous.deleteFirst = false;
+                previous.entity = entity;
+                break;
+            case INSERT:
+                if(previous.kind == Kind.DELETE){
+                    previous.kind = Kind.INSERT;
+                    previous.deleteFirst = true;
+                } else if(previous.kind == Kind.UPDATE){
+                    previous.kind = Kind.UPSERT;
+                }
+                previous.entity = entity;
+                break;
+            default:
+                if(previous.kind != Kind.DELETE){
+                    previous.entity = overlay(previous.entity, entity);
+                }
+                break;
+        }
+    }
+
+    // 新建实体，取next的非空列，其余列取previous
+    private T overlay(T previous, T next) throws Exception {
+        EntityOperation<T> op = dao.operation();
+        T merged = op.newInstance();
+        for (PropertyMapping column : op.columns) {
+            Object value = column.get(next);
+            column.set(merged, value != null ? value : column.get(previous));
+        }
+        return merged;
+    }
+
+    /**
+     * 立即写入已提交的全部数据，返回时之前提交的写入都已执行（或已通知失败）
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            LinkedHashMap<Object, Entry<T>> batch;
+            lock.lock();
+            try {
+                if(pending.isEmpty()){
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<Object, Entry<T>>();
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            write(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 停止后台线程并写入剩余数据，之后提交的写入返回false
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            ready.signal();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join(flushIntervalMillis * 2);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            terminated.countDown();
+        }
+    }
+
+    private void runFlusher() {
+        while (!closed) {
+            lock.lock();
+            try {
+                if(pending.size() < batchSize && !closed){
+                    ready.await(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("写缓冲后台写入失败", e);
+            }
+        }
+    }
+
+    // 按数据源和写入类型分组批量执行
+    private void write(Map<Object, Entry<T>> batch) {
+        Map<String, EnumMap<Kind, List<T>>> groups = new LinkedHashMap<String, EnumMap<Kind, List<T>>>();
+        for (Entry<T> entry : batch.values()) {
+            EnumMap<Kind, List<T>> kinds = groups.get(entry.dataSource);
+            if(kinds == null){
+                kinds = new EnumMap<Kind, List<T>>(Kind.class);
+                groups.put(entry.dataSource, kinds);
+            }
+            // 删除在插入之前执行
+            if(entry.deleteFirst){
+                add(kinds, Kind.DELETE, entry.entity);
+            }
+            add(kinds, entry.kind, entry.entity);
+        }
+        for (final Map.Entry<String, EnumMap<Kind, List<T>>> group : groups.entrySet()) {
+            RoutingContext.run(group.getKey(), new Runnable() {
+                public void run() {
+                    for (Map.Entry<Kind, List<T>> kind : group.getValue().entrySet()) {
+                        if(kind.getKey() == Kind.INSERT){
+                            insert(kind.getValue());
+                        } else {
+                            write(kind.getKey(), kind.getValue(), false);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    private static <T> void add(EnumMap<Kind, List<T>> kinds, Kind kind, T entity) {
+        List<T> list = kinds.get(kind);
+        if(list == null){
+            list = new ArrayList<T>();
+            kinds.put(kind, list);
+        }
+        list.add(entity);
+    }
+
+    /**
+     * 已有主键的实体直接插入，与同步的insert一致，不限制主键类型；
+     * 没有主键的实体取回自增主键写回实体
+     */
+    private void insert(List<T> entities) {
+        boolean returnIds = dao.canReturnIds();
+        List<T> withPk = new ArrayList<T>(entities.size());
+        List<T> withoutPk = new ArrayList<T>();
+        for (T entity : entities) {
+            if(returnIds && pkValue(entity) == null){
+                withoutPk.add(entity);
+            } else {
+                withPk.add(entity);
+            }
+        }
+        if(!withPk.isEmpty()){
+            write(Kind.INSERT, withPk, false);
+        }
+        if(!withoutPk.isEmpty()){
+            write(Kind.INSERT, withoutPk, true);
+        }
+    }
+
+    private Object pkValue(T entity) {
+        try {
+            return dao.pkValue(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param returnIds 插入时取回自增主键
+     */
+    private void write(Kind kind, List<T> entities, boolean returnIds) {
+        try {
+            switch (kind){
+                case DELETE:
+                    dao.deleteAll(entities);
+                    break;
+                case UPSERT:
+                    dao.upsertAll(entities);
+                    break;
+                case INSERT:
+                    if(returnIds){
+                        dao.insertAllReturnIds(entities);
+                    } else {
+                        dao.insertAll(entities);
+                    }
+                    break;
+                default:
+                    dao.updateAll(entities);
+                    break;
+            }
+        } catch (Exception e) {
+            if(listener == null){
+                log.error("写缓冲批量" + kind + "失败，共" + entities.size() + "条", e);
+                return;
+            }
+            try {
+                listener.onFailure(kind, entities, e);
+            } catch (RuntimeException ex) {
+                log.error("写缓冲失败回调异常", ex);
+            }
+        }
+    }
+
+    private static final class Entry<T> {
+        Kind kind;
+        T entity;
+        // 删除后又插入，写入时先删除
+        boolean deleteFirst;
+        final String dataSource;
+
+        Entry(Kind kind, T entity, String dataSource) {
+            this.kind = kind;
+            this.entity = entity;
+            this.dataSource = dataSource;
+        }
+    }
+
+    // 数据源+主键
+    private static final class Key {
+        private final String dataSource;
+        private final Object pkValue;
+
+        Key(String dataSource, Object pkValue) {
+            this.dataSource = dataSource;
+            this.pkValue = pkValue;
+        }
+
+        @Override
+        public int hashCode() {
+            return (dataSource == null ? 0 : dataSource.hashCode()) * 31 + pkValue.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof Key)){
+                return false;
+            }
+            Key key = (Key) o;
+            return (dataSource == null ? key.dataSource == null : dataSource.equals(key.dataSource))
+                    && pkValue.equals(key.pkValue);
+        }
+    }
+}
@@ -0,0 +1,556 @@
+package com.study.spring.orm.framework;
+
+import org.apache.log4j.Logger;
+
+import javax.core.common.jdbc.datasource.RoutingContext;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.zip.CRC32;
+
+/**
+ * 本地写日志
+ * 数据库不可用时把写入追加到内存映射的段文件中，数据库恢复后由replay()按写入顺序批量回放
+ * 每条记录保存操作类型、数据源标记和实体按columns顺序的全部列值，回放时按主键upsert或delete，重复回放结果相同
+ * 因此只接受主键不为空的实体；追加的数据在进程崩溃后仍然保留，断电前需要调用sync()
+ * startReplayer()启动的后台线程定期尝试回放，回放成功即说明数据库已恢复，日志清空后写入恢复为直接写数据库
+ * @param <T>
+ */
+public class WriteJournal<T extends Serializable> implements Closeable {
+    private static final Logger log = Logger.getLogger(WriteJournal.class);
+
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_REPLAY_INTERVAL_MILLIS = 5000;
+    public static final int DEFAULT_REPLAY_BATCH_SIZE = 500;
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT = "checkpoint";
+
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+
+    // 每条记录的头部：内容长度、内容的CRC
+    private static final int HEADER_BYTES = 8;
+
+    private final BaseDaoSupport<T, ?> dao;
+    private final EntityOperation<T> op;
+    private final File dir;
+    private final int segmentBytes;
+    // 列布局签名，实体的列变化后拒绝回放旧日志
+    private final int layout;
+    private final int pkIndex;
+
+    // 正在写入的段
+    private long writeSeq;
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeBuffer;
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+    private final CRC32 crc = new CRC32();
+
+    // 回放位置，之前的记录都已写入数据库
+    private final Object replayLock = new Object();
+    private long readSeq;
+    private int readOffset;
+    private MappedByteBuffer readBuffer;
+    private long readBufferSeq = -1;
+
+    private volatile long pending;
+    private boolean closed;
+
+    // 后台回放线程，close()时通过signal唤醒退出
+    private final Object signal = new Object();
+    private Thread replayer;
+
+    /**
+     * 打开日志目录，目录中已有的日志从上次回放的位置继续
+     * @param dao
+     * @param dir 日志目录，一个目录只能给一个WriteJournal使用
+     * @param segmentBytes 每个段文件的大小，单条记录不能超过此大小
+     * @throws IOException
+     */
+    public WriteJournal(BaseDaoSupport<T, ?> dao, File dir, int segmentBytes) throws IOException {
+        if(segmentBytes <= HEADER_BYTES){
+            throw new IllegalArgumentException("segmentBytes太小: " + segmentBytes);
+        }
+        for (PropertyMapping column : dao.operation().columns) {
+            if(!ValueCodec.supports(column.getter.getReturnType())){
+                throw new IllegalArgumentException("写日志不支持列" + column.columnName + "的类型: "
+                        + column.getter.getReturnType().getName());
+            }
+        }
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            throw new IOException("无法创建日志目录: " + dir);
+        }
+        this.dao = dao;
+        this.op = dao.operation();
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        this.pkIndex = op.columnIndex(dao.getPKColumn());
+        CRC32 signature = new CRC32();
+        for (String columnName : op.columnNames) {
+            signature.update((columnName + ",").getBytes());
+        }
+        this.layout = (int) signature.getValue();
+        open();
+    }
+
+    private void open() throws IOException {
+        readCheckpoint();
+        long[] seqs = segments();
+        for (long seq : seqs) {
+            // 已回放完但没来得及删除的段
+            if(seq < readSeq){
+                segmentFile(seq).delete();
+            }
+        }
+        long last = seqs.length == 0 ? readSeq : Math.max(seqs[seqs.length - 1], readSeq);
+        long count = 0;
+        for (long seq = readSeq; seq < last; seq++) {
+            if(segmentFile(seq).exists()){
+                count += scan(map(seq, FileChannel.MapMode.READ_ONLY), seq == readSeq ? readOffset : 0, false);
+            }
+        }
+        this.writeChannel = new RandomAccessFile(segmentFile(last), "rw").getChannel();
+        this.writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        this.writeSeq = last;
+        int from = last == readSeq ? readOffset : 0;
+        count += scan(writeBuffer, from, true);
+        terminate(writeBuffer);
+        this.pending = count;
+        if(count > 0){
+            log.info(dao.getTableName() + "的写日志中有" + count + "条记录待回放");
+        }
+    }
+
+    /**
+     * 从from开始数出段中的完整记录
+     * @param position 为true时把buffer的position设在最后一条完整记录之后
+     */
+    private int scan(ByteBuffer buffer, int from, boolean position) {
+        int offset = from;
+        int count = 0;
+        while (true){
+            int length = entryLength(buffer, offset);
+            if(length <= 0 || !checkEntry(buffer, offset, length)){
+                break;
+            }
+            offset += HEADER_BYTES + length;
+            count++;
+        }
+        if(position){
+            buffer.position(offset);
+        }
+        return count;
+    }
+
+    // 记录内容的长度，到达段末尾时返回0
+    private static int entryLength(ByteBuffer buffer, int offset) {
+        if(offset + HEADER_BYTES > buffer.capacity()){
+            return 0;
+        }
+        int length = buffer.getInt(offset);
+        if(length < 0 || offset + HEADER_BYTES + length > buffer.capacity()){
+            return 0;
+        }
+        return length;
+    }
+
+    // 长度写入后进程崩溃时内容可能不完整，用CRC识别
+    private static boolean checkEntry(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer content = buffer.duplicate();
+        content.limit(offset + HEADER_BYTES + length).position(offset + HEADER_BYTES);
+        CRC32 check = new CRC32();
+        check.update(content);
+        return (int) check.getValue() == buffer.getInt(offset + 4);
+    }
+
+    /**
+     * 记录插入或更新，回放时按主键upsert实体的非空列
+     * @param entity
+     * @throws Exception
+     */
+    public void save(T entity) throws Exception {
+        append(UPSERT, entity);
+    }
+
+    /**
+     * 记录按主键删除
+     * @param entity
+     * @throws Exception
+     */
+    public void delete(T entity) throws Exception {
+        append(DELETE, entity);
+    }
+
+    private synchronized void append(byte kind, T entity) throws Exception {
+        if(closed){
+            throw new IllegalStateException("写日志已关闭");
+        }
+        Object[] values = new Object[op.columns.length];
+        op.readColumns(entity, values);
+        if(values[pkIndex] == null){
+            throw new IllegalArgumentException("写日志只接受主键不为空的实体");
+        }
+        bytes.reset();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(kind);
+        String dataSource = RoutingContext.current();
+        out.writeBoolean(dataSource != null);
+        if(dataSource != null){
+            out.writeUTF(dataSource);
+        }
+        out.writeInt(layout);
+        for (Object value : values) {
+            ValueCodec.write(out, value);
+        }
+        out.flush();
+        int length = bytes.size();
+        if(HEADER_BYTES + length > segmentBytes){
+            throw new IllegalArgumentException("单条记录超过段文件大小: " + length);
+        }
+        if(writeBuffer.remaining() < HEADER_BYTES + length){
+            roll();
+        }
+        int offset = writeBuffer.position();
+        byte[] content = bytes.toByteArray();
+        crc.reset();
+        crc.update(content, 0, length);
+        writeBuffer.position(offset + HEADER_BYTES);
+        writeBuffer.put(content, 0, length);
+        writeBuffer.putInt(offset + 4, (int) crc.getValue());
+        writeBuffer.putInt(offset, length);
+        terminate(writeBuffer);
+        pending++;
+    }
+
+    // 在下一条记录的位置写入0长度，之前崩溃残留的不完整记录不会被读到
+    private static void terminate(MappedByteBuffer buffer) {
+        if(buffer.remaining() >= 4){
+            buffer.putInt(buffer.position(), 0);
+        }
+    }
+
+    // 当前段写满，切换到下一个段
+    private void roll() throws IOException {
+        writeBuffer.force();
+        writeChannel.close();
+        writeSeq++;
+        writeChannel = new RandomAccessFile(segmentFile(writeSeq), "rw").getChannel();
+        writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    /**
+     * 把已追加的记录刷到磁盘
+     */
+    public synchronized void sync() {
+        if(!closed){
+            writeBuffer.force();
+        }
+    }
+
+    /**
+     * 待回放的记录数
+     * @return
+     */
+    public long pending() {
+        return pending;
+    }
+
+    /**
+     * 启动后台回放线程，每隔intervalMillis检查一次，有待回放的记录时调用replay
+     * 数据库仍不可用时回放失败，等到下一次再试
+     * @param intervalMillis
+     * @param batchSize 每批最多的记录数
+     */
+    public synchronized void startReplayer(final long intervalMillis, final int batchSize) {
+        if(intervalMillis <= 0 || batchSize <= 0){
+            throw new IllegalArgumentException("intervalMillis和batchSize必须大于0");
+        }
+        if(closed){
+            throw new IllegalStateException("写日志已关闭");
+        }
+        if(replayer != null){
+            return;
+        }
+        replayer = new Thread(new Runnable() {
+            public void run() {
+                runReplayer(intervalMillis, batchSize);
+            }
+        }, "journal-replay-" + dao.getTableName());
+        replayer.setDaemon(true);
+        replayer.start();
+    }
+
+    private void runReplayer(long intervalMillis, int batchSize) {
+        while (true){
+            synchronized (signal){
+                try {
+                    signal.wait(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            if(isClosed()){
+                return;
+            }
+            if(pending == 0){
+                continue;
+            }
+            try {
+                long replayed = replay(batchSize);
+                log.info(dao.getTableName() + "的写日志回放了" + replayed + "条记录");
+            } catch (Exception e) {
+                if(isClosed()){
+                    return;
+                }
+                log.debug(dao.getTableName() + "的写日志回放失败，稍后重试: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 按写入顺序回放日志，每批写入成功后保存回放位置
+     * 连续的同类型、同数据源且主键不重复的记录作为一批执行；失败时抛出异常，下次从失败的批次重新开始
+     * @param batchSize 每批最多的记录数
+     * @return 本次回放的记录数
+     * @throws Exception
+     */
+    public long replay(int batchSize) throws Exception {
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize必须大于0");
+        }
+        synchronized (replayLock){
+            long replayed = 0;
+            List<T> batch = new ArrayList<T>(Math.min(batchSize, 1024));
+            Set<Object> pks = new HashSet<Object>();
+            while (true){
+                long endSeq;
+                int endOffset;
+                synchronized (this){
+                    if(closed){
+                        throw new IllegalStateException("写日志已关闭");
+                    }
+                    endSeq = writeSeq;
+                    endOffset = writeBuffer.position();
+                }
+                if(readSeq == endSeq && readOffset >= endOffset){
+                    break;
+                }
+                ByteBuffer segment = readSegment(readSeq);
+                int limit = readSeq == endSeq ? endOffset : segment.capacity();
+                int offset = readOffset;
+                byte kind = 0;
+                String dataSource = null;
+                batch.clear();
+                pks.clear();
+                while (batch.size() < batchSize){
+                    int length = offset < limit ? entryLength(segment, offset) : 0;
+                    if(length <= 0){
+                        break;
+                    }
+                    if(!checkEntry(segment, offset, length)){
+                        throw new IllegalStateException("写日志已损坏: " + segmentFile(readSeq) + "@" + offset);
+                    }
+                    DataInputStream in = entryInput(segment, offset, length);
+                    byte entryKind = in.readByte();
+                    String entryDataSource = in.readBoolean() ? in.readUTF() : null;
+                    if(!batch.isEmpty() && (entryKind != kind || !equals(entryDataSource, dataSource))){
+                        break;
+                    }
+                    T entity = readEntity(in);
+                    // 同一主键的多次写入分到不同批次，保证执行顺序
+                    if(!pks.add(dao.pkValue(entity))){
+                        break;
+                    }
+                    kind = entryKind;
+                    dataSource = entryDataSource;
+                    batch.add(entity);
+                    offset += HEADER_BYTES + length;
+                }
+                if(batch.isEmpty()){
+                    // 段已读完，且后面还有段
+                    if(readSeq < endSeq){
+                        long finished = readSeq;
+                        saveCheckpoint(readSeq + 1, 0);
+                        segmentFile(finished).delete();
+                        continue;
+                    }
+                    break;
+                }
+                execute(kind, dataSource, batch);
+                saveCheckpoint(readSeq, offset);
+                replayed += batch.size();
+                synchronized (this){
+                    pending -= batch.size();
+                }
+            }
+            return replayed;
+        }
+    }
+
+    private void execute(final byte kind, String dataSource, final List<T> batch) throws Exception {
+        RoutingContext.call(dataSource, new Callable<Integer>() {
+            public Integer call() throws Exception {
+                return kind == DELETE ? dao.deleteAll(batch) : dao.upsertAll(batch);
+            }
+        });
+    }
+
+    private T readEntity(DataInputStream in) throws Exception {
+        if(in.readInt() != layout){
+            throw new IllegalStateException("写日志的列与实体" + op.entityClass.getName() + "不一致");
+        }
+        T entity = op.entityClass.newInstance();
+        for (PropertyMapping column : op.columns) {
+            Object value = ValueCodec.read(in);
+            if(value != null){
+                column.set(entity, value);
+            }
+        }
+        return entity;
+    }
+
+    private static DataInputStream entryInput(ByteBuffer segment, int offset, int length) {
+        byte[] content = new byte[length];
+        ByteBuffer source = segment.duplicate();
+        source.position(offset + HEADER_BYTES);
+        source.get(content);
+        return new DataInputStream(new ByteArrayInputStream(content));
+    }
+
+    // 正在写入的段直接读取写入缓冲区，其余的段只读映射
+    private ByteBuffer readSegment(long seq) throws IOException {
+        synchronized (this){
+            if(seq == writeSeq){
+                return writeBuffer.duplicate();
+            }
+        }
+        if(readBufferSeq != seq){
+            readBuffer = map(seq, FileChannel.MapMode.READ_ONLY);
+            readBufferSeq = seq;
+        }
+        return readBuffer.duplicate();
+    }
+
+    private MappedByteBuffer map(long seq, FileChannel.MapMode mode) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segmentFile(seq), "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return channel.map(mode, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+
+    private void readCheckpoint() throws IOException {
+        File file = new File(dir, CHECKPOINT);
+        if(!file.exists()){
+            long[] seqs = segments();
+            readSeq = seqs.length == 0 ? 0 : seqs[0];
+            readOffset = 0;
+            return;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file.toPath())));
+        readSeq = in.readLong();
+        readOffset = in.readInt();
+    }
+
+    // 先写临时文件再改名，避免崩溃时回放位置不完整
+    private void saveCheckpoint(long seq, int offset) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(12);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeLong(seq);
+        out.writeInt(offset);
+        out.flush();
+        File tmp = new File(dir, CHECKPOINT + ".tmp");
+        RandomAccessFile file = new RandomAccessFile(tmp, "rw");
+        try {
+            file.setLength(0);
+            file.write(buffer.toByteArray());
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        Files.move(tmp.toPath(), new File(dir, CHECKPOINT).toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        this.readSeq = seq;
+        this.readOffset = offset;
+    }
+
+    private long[] segments() {
+        String[] names = dir.list();
+        List<Long> seqs = new ArrayList<Long>();
+        if(names != null){
+            for (String name : names) {
+                if(name.endsWith(SEGMENT_SUFFIX)){
+                    try {
+                        seqs.add(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())));
+                    } catch (NumberFormatException e) {
+                        // 不是段文件
+                    }
+                }
+            }
+        }
+        long[] result = new long[seqs.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = seqs.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    private File segmentFile(long seq) {
+        return new File(dir, String.format("%020d", seq) + SEGMENT_SUFFIX);
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * 刷盘并关闭日志，未回放的记录在下次打开时继续
+     */
+    public void close() {
+        synchronized (signal){
+            synchronized (this){
+                closed = true;
+            }
+            signal.notifyAll();
+        }
+        synchronized (replayLock){
+            synchronized (this){
+                if(writeChannel == null){
+                    return;
+                }
+                writeBuffer.force();
+                try {
+                    writeChannel.close();
+                } catch (IOException e) {
+                    log.warn("关闭写日志失败", e);
+                }
+                writeChannel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package javax.core.common;
+
+import java.util.List;
+
+/**
+ * 游标（keyset）分页结果
+ * 不统计总数，通过nextToken继续查询下一页
+ */
+public class KeysetPage<T> extends Page<T> {
+    private static final long serialVersionUID = 1L;
+
+    // 下一页的游标，没有下一页时为null
+    private String nextToken;
+
+    /**
+     * @param pageSize：页面容量
+     * @param rows：本页包含的数据
+     * @param nextToken：下一页的游标
+     */
+    public KeysetPage(int pageSize, List<T> rows, String nextToken) {
+        super(pageSize, 0, rows, nextToken != null);
+        this.nextToken = nextToken;
+    }
+
+    // 获取下一页的游标，原样传回即可查询下一页
+    public String getNextToken() {
+        return nextToken;
+    }
+}
@@ -21,6 +21,24 @@ public class Page<T> implements Serializable {
     // 总共记录数
     private long total;
 
+    // 总数的准确程度
+    private TotalType totalType = TotalType.EXACT;
+
+    // 是否有下一页，为null时根据总数计算
+    private Boolean hasNext;
+
+    /**
+     * 总数类型
+     */
+    public enum TotalType {
+        // 实时统计的总数
+        EXACT,
+        // 缓存或估算的总数，可能与实际不符
+        ESTIMATED,
+        // 未统计总数
+        ABSENT
+    }
+
     public Page(){
         this(DEFAULT_PAGE_SIZE, 0, new ArrayList<T>(), 0);
     }
@@ -40,6 +58,31 @@ public class Page<T> implements Serializable {
         this.total = total;
     }
 
+    /**
+     * @param pageSize：页面容量
+     * @param start：本页数据在数据库中的起始位置
+     * @param rows：本页包含的数据
+     * @param total：数据库中总记录条数
+     * @param totalType：总数类型
+     */
+    public Page(int pageSize, long start, List<T> rows, long total, TotalType totalType) {
+        this(pageSize, start, rows, total);
+        this.totalType = totalType;
+    }
+
+    /**
+     * 不统计总数的分页
+     *
+     * @param pageSize：页面容量
+     * @param start：本页数据在数据库中的起始位置
+     * @param rows：本页包含的数据
+     * @param hasNext：是否有下一页
+     */
+    public Page(int pageSize, long start, List<T> rows, boolean hasNext) {
+        this(pageSize, start, rows, -1, TotalType.ABSENT);
+        this.hasNext = hasNext;
+    }
+
     // 获取每页显示的数据条数
     public int getPageSize() {
         return pageSize;
@@ -52,7 +95,13 @@ public class Page<T> implements Serializable {
 
     // 该页是否有下一页
     public boolean hasNextPage(){
-        return this.getPageNo() < this.getTotalPageCount() - 1;
+        if(hasNext != null){
+            return hasNext;
+        }
+        if(totalType == TotalType.ABSENT){
+            return false;
+        }
+        return this.getPageNo() < this.getTotalPageCount();
     }
 
     // 该页是否有上一页
@@ -69,7 +118,7 @@ public class Page<T> implements Serializable {
         this.rows = rows;
     }
 
-    // 获取总记录数
+    // 获取总记录数，未统计时为-1
     public long getTotal() {
         return total;
     }
@@ -78,8 +127,20 @@ public class Page<T> implements Serializable {
         this.total = total;
     }
 
-    // 获取总页数
+    // 获取总数类型
+    public TotalType getTotalType() {
+        return totalType;
+    }
+
+    public void setTotalType(TotalType totalType) {
+        this.totalType = totalType;
+    }
+
+    // 获取总页数，未统计总数时为-1
     public long getTotalPageCount(){
+        if(totalType == TotalType.ABSENT){
+            return -1;
+        }
         if(total % pageSize == 0){
             return total / pageSize;
         } else {
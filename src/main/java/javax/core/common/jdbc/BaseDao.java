@@ -1,10 +1,14 @@
 package javax.core.common.jdbc;
 
 import com.study.spring.orm.framework.QueryRule;
+import com.study.spring.orm.framework.RowVisitor;
 
+import javax.core.common.KeysetPage;
 import javax.core.common.Page;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 public interface BaseDao<T, PK> {
 
@@ -26,6 +30,16 @@ public interface BaseDao<T, PK> {
      */
     Page<?> select(QueryRule queryRule, int pageNo, int pageSize) throws Exception;
 
+    /**
+     * 获取游标分页结果，翻页深度不影响查询速度
+     * @param queryRule 查询条件，排序列会加上主键作为排序键
+     * @param token 上一页返回的游标，第一页为null
+     * @param pageSize 每页条数
+     * @return
+     * @throws Exception
+     */
+    KeysetPage<T> selectByKeyset(QueryRule queryRule, String token, int pageSize) throws Exception;
+
     /**
      * 根据SQL获取列表
      * @param sql SQL语句
@@ -35,6 +49,51 @@ public interface BaseDao<T, PK> {
      */
     List<Map<String, Object>> selectBySql(String sql, Object... args) throws Exception;
 
+    /**
+     * 流式查询，结果集逐行读取并转换，使用完必须关闭
+     * @param queryRule 查询条件
+     * @return
+     * @throws Exception
+     */
+    Stream<T> stream(QueryRule queryRule) throws Exception;
+
+    /**
+     * 根据SQL流式查询，使用完必须关闭
+     * @param sql SQL语句
+     * @param args 参数
+     * @return
+     * @throws Exception
+     */
+    Stream<Map<String, Object>> streamBySql(String sql, Object... args) throws Exception;
+
+    /**
+     * 扫描查询结果，所有行复用同一个实体对象，回调中不能保存实体的引用
+     * @param queryRule 查询条件
+     * @param visitor 每行调用一次，返回false时停止
+     * @return 访问的行数
+     * @throws Exception
+     */
+    long scan(QueryRule queryRule, RowVisitor<T> visitor) throws Exception;
+
+    /**
+     * 按主键范围分段并行扫描，每段使用各自的连接
+     * @param queryRule 查询条件
+     * @param partitions 分段数
+     * @param visitor 会被多个线程同时调用，必须线程安全
+     * @return 访问的行数
+     * @throws Exception
+     */
+    long parallelScan(QueryRule queryRule, int partitions, RowVisitor<T> visitor) throws Exception;
+
+    /**
+     * 按主键范围分段并行查询，结果按分段顺序合并
+     * @param queryRule 查询条件
+     * @param partitions 分段数
+     * @return
+     * @throws Exception
+     */
+    List<T> selectParallel(QueryRule queryRule, int partitions) throws Exception;
+
 
     /**
      * 删除一条记录
@@ -52,6 +111,23 @@ public interface BaseDao<T, PK> {
      */
     int deleteAll(List<T> list) throws Exception;
 
+    /**
+     * 按条件删除，不加载实体
+     * @param queryRule 查询条件，不能为空
+     * @return 删除的行数
+     * @throws Exception
+     */
+    int deleteByRule(QueryRule queryRule) throws Exception;
+
+    /**
+     * 按条件分批删除，每批最多chunkSize条
+     * @param queryRule 查询条件，不能为空
+     * @param chunkSize 每批删除的最大条数
+     * @return 删除的总行数
+     * @throws Exception
+     */
+    long deleteByRule(QueryRule queryRule, int chunkSize) throws Exception;
+
 
     /**
      * 插入一条记录并返回插入后的ID
@@ -77,6 +153,22 @@ public interface BaseDao<T, PK> {
      */
     int insertAll(List<T> list) throws Exception;
 
+    /**
+     * 流式批量插入，边读取边分批提交，内存只保留一批数据
+     * @param iterator
+     * @return 受影响的行数
+     * @throws Exception
+     */
+    int insertAll(Iterator<T> iterator) throws Exception;
+
+    /**
+     * 流式批量插入，按顺序消费stream，不会关闭stream
+     * @param stream
+     * @return 受影响的行数
+     * @throws Exception
+     */
+    int insertAll(Stream<T> stream) throws Exception;
+
 
     /**
      * 修改记录
@@ -85,4 +177,21 @@ public interface BaseDao<T, PK> {
      * @throws Exception
      */
     boolean update(T entity) throws Exception;
+
+    /**
+     * 批量修改记录
+     * @param list ID为空的记录不修改
+     * @return 与list顺序一致的修改记录数
+     * @throws Exception
+     */
+    int[] updateAll(List<T> list) throws Exception;
+
+    /**
+     * 按条件修改，不加载实体
+     * @param queryRule 查询条件，不能为空
+     * @param assignments 列名和新值
+     * @return 修改的行数
+     * @throws Exception
+     */
+    int updateByRule(QueryRule queryRule, Map<String, Object> assignments) throws Exception;
 }
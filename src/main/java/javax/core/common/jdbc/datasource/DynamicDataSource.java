@@ -6,8 +6,9 @@ public class DynamicDataSource extends AbstractRoutingDataSource {
     // entry的目的：用于给每个数据源打个标记
     private DynamicDataSourceEntry dataSourceEntry;
 
+    // 直接读取ThreadLocal，每次获取连接时不创建对象
     protected Object determineCurrentLookupKey() {
-        return this.dataSourceEntry.get();
+        return RoutingContext.current();
     }
 
     public DynamicDataSourceEntry getDataSourceEntry() {
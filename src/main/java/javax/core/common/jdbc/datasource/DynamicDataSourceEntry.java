@@ -6,7 +6,8 @@ public class DynamicDataSourceEntry {
     // 默认数据源
     public final static String DEFAULT_SOURCE = null;
 
-    private final static ThreadLocal<String> local = new ThreadLocal<String>();
+    // 与RoutingContext共用，优先使用RoutingContext限定作用域
+    private final static ThreadLocal<String> local = RoutingContext.KEY;
 
     // 清空数据源
     public void clear(){
@@ -0,0 +1,118 @@
+package javax.core.common.jdbc.datasource;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * 数据源路由作用域
+ * 在一段代码执行期间绑定数据源标记，结束后恢复外层的标记，不会遗留在线程池的线程中；
+ * wrap包装的任务和线程池在执行时使用提交时的标记，标记可以随CompletableFuture的各阶段传递
+ * 与DynamicDataSourceEntry共用同一个ThreadLocal，旧代码的set/restore仍然有效
+ */
+public final class RoutingContext {
+
+    // 当前线程的数据源标记，null为默认数据源
+    static final ThreadLocal<String> KEY = new ThreadLocal<String>();
+
+    private RoutingContext() {
+    }
+
+    /**
+     * 当前线程的数据源标记
+     * @return 默认数据源时为null
+     */
+    public static String current() {
+        return KEY.get();
+    }
+
+    /**
+     * 按年份得到的数据源标记
+     * @param year
+     * @return
+     */
+    public static String forYear(int year) {
+        return "DB_" + year;
+    }
+
+    /**
+     * 使用指定的数据源执行
+     * @param key 数据源标记，null为默认数据源
+     * @param action
+     */
+    public static void run(String key, Runnable action) {
+        String previous = bind(key);
+        try {
+            action.run();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    /**
+     * 使用指定的数据源执行并返回结果
+     * @param key 数据源标记，null为默认数据源
+     * @param action
+     * @return
+     * @throws Exception
+     */
+    public static <V> V call(String key, Callable<V> action) throws Exception {
+        String previous = bind(key);
+        try {
+            return action.call();
+        } finally {
+            bind(previous);
+        }
+    }
+
+    /**
+     * 包装任务，执行时使用当前线程的数据源标记
+     * @param task
+     * @return
+     */
+    public static Runnable wrap(final Runnable task) {
+        final String key = current();
+        return new Runnable() {
+            public void run() {
+                RoutingContext.run(key, task);
+            }
+        };
+    }
+
+    /**
+     * 包装任务，执行时使用当前线程的数据源标记
+     * @param task
+     * @return
+     */
+    public static <V> Callable<V> wrap(final Callable<V> task) {
+        final String key = current();
+        return new Callable<V>() {
+            public V call() throws Exception {
+                return RoutingContext.call(key, task);
+            }
+        };
+    }
+
+    /**
+     * 包装线程池，每个任务在执行时使用提交任务的线程的数据源标记
+     * @param executor
+     * @return
+     */
+    public static Executor wrap(final Executor executor) {
+        return new Executor() {
+            public void execute(Runnable command) {
+                executor.execute(wrap(command));
+            }
+        };
+    }
+
+    // 设置标记并返回原来的标记，null时移除ThreadLocal的值
+    private static String bind(String key) {
+        String previous = KEY.get();
+        if(key == null){
+            KEY.remove();
+        } else {
+            KEY.set(key);
+        }
+        return previous;
+    }
+}
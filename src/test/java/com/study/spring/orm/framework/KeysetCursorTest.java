@@ -0,0 +1,172 @@
+package com.study.spring.orm.framework;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.core.common.KeysetPage;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 排序列含null时游标分页不能漏行或重复：每3行qty为null，每5行name为null
+ * 期望顺序在内存中按null最小计算，与Dialect.nullsFirst一致
+ */
+public class KeysetCursorTest {
+    private static final int ROWS = 30;
+    private static final int PAGE_SIZE = 7;
+    private static int databases;
+
+    @Entity
+    @Table(name = "t_keyset")
+    public static class KeysetItem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        private Long id;
+        private String name;
+        private Integer qty;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public Integer getQty() { return qty; }
+        public void setQty(Integer qty) { this.qty = qty; }
+    }
+
+    public static class KeysetItemDao extends BaseDaoSupport<KeysetItem, Long> {
+        KeysetItemDao(DriverManagerDataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+            setDialect(new H2Dialect());
+        }
+
+        protected String getPKColumn() {
+            return "id";
+        }
+    }
+
+    private KeysetItemDao dao;
+    private List<KeysetItem> items;
+
+    @Before
+    public void setUp() throws Exception {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:keyset" + (databases++) + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setDriverClassName("org.h2.Driver");
+        new JdbcTemplate(dataSource).execute("create table t_keyset(id bigint primary key, name varchar(20), qty int)");
+        dao = new KeysetItemDao(dataSource);
+        items = new ArrayList<KeysetItem>();
+        for (int i = 1; i <= ROWS; i++) {
+            KeysetItem item = new KeysetItem();
+            item.setId((long) i);
+            item.setName(i % 5 == 0 ? null : "n" + (i % 4));
+            item.setQty(i % 3 == 0 ? null : i % 4);
+            items.add(item);
+        }
+        dao.insertAll(items);
+    }
+
+    @Test
+    public void nullableColumnAscending() throws Exception {
+        assertPages(QueryRule.getInstance().addAscOrder("qty"), compare(QTY, true).thenComparing(ID));
+    }
+
+    @Test
+    public void nullableColumnDescending() throws Exception {
+        assertPages(QueryRule.getInstance().addDescOrder("qty"), compare(QTY, false).thenComparing(ID));
+    }
+
+    @Test
+    public void mixedDirections() throws Exception {
+        assertPages(QueryRule.getInstance().addAscOrder("qty").addDescOrder("name"),
+                compare(QTY, true).thenComparing(compare(NAME, false)).thenComparing(ID));
+        assertPages(QueryRule.getInstance().addDescOrder("name").addAscOrder("qty"),
+                compare(NAME, false).thenComparing(compare(QTY, true)).thenComparing(ID));
+    }
+
+    @Test
+    public void descendingPrimaryKeyAfterNulls() throws Exception {
+        assertPages(QueryRule.getInstance().addDescOrder("qty").addDescOrder("id"),
+                compare(QTY, false).thenComparing(ID.reversed()));
+    }
+
+    @Test
+    public void withCondition() throws Exception {
+        List<KeysetItem> expected = new ArrayList<KeysetItem>();
+        for (KeysetItem item : items) {
+            if(item.getId() > 4){
+                expected.add(item);
+            }
+        }
+        Collections.sort(expected, compare(NAME, true).thenComparing(compare(QTY, false)).thenComparing(ID));
+        assertPages(QueryRule.getInstance().andGreaterThan("id", 4L).addAscOrder("name").addDescOrder("qty"), expected);
+    }
+
+    private void assertPages(QueryRule rule, Comparator<KeysetItem> order) throws Exception {
+        List<KeysetItem> expected = new ArrayList<KeysetItem>(items);
+        Collections.sort(expected, order);
+        assertPages(rule, expected);
+    }
+
+    private void assertPages(QueryRule rule, List<KeysetItem> expected) throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        String token = null;
+        int pages = 0;
+        do {
+            KeysetPage<KeysetItem> page = dao.selectByKeyset(rule, token, PAGE_SIZE);
+            for (KeysetItem item : page.getRows()) {
+                ids.add(item.getId());
+            }
+            token = page.getNextToken();
+            pages++;
+        } while (token != null && pages <= ROWS);
+        assertNull(token);
+        List<Long> expectedIds = new ArrayList<Long>();
+        for (KeysetItem item : expected) {
+            expectedIds.add(item.getId());
+        }
+        assertEquals(expectedIds, ids);
+    }
+
+    private interface Key {
+        Comparable<?> get(KeysetItem item);
+    }
+
+    private static final Key QTY = new Key() {
+        public Comparable<?> get(KeysetItem item) { return item.getQty(); }
+    };
+
+    private static final Key NAME = new Key() {
+        public Comparable<?> get(KeysetItem item) { return item.getName(); }
+    };
+
+    private static final Comparator<KeysetItem> ID = new Comparator<KeysetItem>() {
+        public int compare(KeysetItem a, KeysetItem b) {
+            return a.getId().compareTo(b.getId());
+        }
+    };
+
+    // null最小，降序时排在最后
+    private static Comparator<KeysetItem> compare(final Key key, final boolean ascending) {
+        return new Comparator<KeysetItem>() {
+            @SuppressWarnings("unchecked")
+            public int compare(KeysetItem a, KeysetItem b) {
+                Comparable<Object> x = (Comparable<Object>) key.get(a);
+                Comparable<Object> y = (Comparable<Object>) key.get(b);
+                int c = x == null ? (y == null ? 0 : -1) : (y == null ? 1 : x.compareTo(y));
+                return ascending ? c : -c;
+            }
+        };
+    }
+}
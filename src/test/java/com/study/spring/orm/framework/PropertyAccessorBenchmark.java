@@ -0,0 +1,70 @@
+package com.study.spring.orm.framework;
+
+import java.lang.reflect.Method;
+
+/**
+ * 属性读写器的微基准：比较FastClass、MethodHandle和Method.invoke
+ * 每次操作为一次set加一次get，先预热再取多轮的结果
+ * 运行：java -cp target/test-classes:target/classes:依赖 com.study.spring.orm.framework.PropertyAccessorBenchmark [每轮次数]
+ * JDK 9以上FastClass需要--add-opens java.base/java.lang=ALL-UNNAMED，否则会显示不可用
+ */
+public class PropertyAccessorBenchmark {
+    private static final int ROUNDS = 5;
+
+    public static class Bean {
+        private Long value;
+
+        public Long getValue() {
+            return value;
+        }
+
+        public void setValue(Long value) {
+            this.value = value;
+        }
+    }
+
+    // 防止结果被优化掉
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20000000;
+        Method getter = Bean.class.getMethod("getValue");
+        Method setter = Bean.class.getMethod("setValue", Long.class);
+        run("FastClass", PropertyAccessors.fastClass(Bean.class, getter, setter), iterations);
+        run("MethodHandle", PropertyAccessors.methodHandle(Bean.class, getter, setter), iterations);
+        run("Method.invoke", PropertyAccessors.reflect(getter, setter), iterations);
+        System.out.println("sink " + sink);
+    }
+
+    private static void run(String name, PropertyAccessor accessor, int iterations) throws Exception {
+        if(accessor == null){
+            System.out.println(name + ": 不可用");
+            return;
+        }
+        Bean bean = new Bean();
+        // 预热，让JIT完成编译
+        measure(accessor, bean, iterations);
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            best = Math.min(best, measure(accessor, bean, iterations));
+        }
+        System.out.println(String.format("%-14s %8.2f ns/op", name, best));
+    }
+
+    private static double measure(PropertyAccessor accessor, Bean bean, int iterations) throws Exception {
+        // 值在Long缓存范围内，避免装箱分配干扰结果
+        Long[] values = new Long[128];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) i;
+        }
+        long sum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            accessor.set(bean, values[i & 127]);
+            sum += (Long) accessor.get(bean);
+        }
+        long elapsed = System.nanoTime() - start;
+        sink += sum;
+        return (double) elapsed / iterations;
+    }
+}
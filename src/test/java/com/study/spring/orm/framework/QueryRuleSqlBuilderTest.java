@@ -0,0 +1,169 @@
+package com.study.spring.orm.framework;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对比QueryRuleSqlBuilder/QueryRulePlan与改造前实现的输出
+ * 规则形状两两、三三组合，where语句和参数必须完全一致，只允许以下有意的差异：
+ * 1. 排序语句由"Order{id asc}"改为"id asc"
+ * 2. 查询计划只去掉第一个条件前的and/or，原先会去掉所有and并转成小写
+ * 3. 列名中出现order by时抛出异常，原先截掉其后的内容
+ */
+public class QueryRuleSqlBuilderTest {
+
+    private static abstract class Shape {
+        final String name;
+
+        Shape(String name) {
+            this.name = name;
+        }
+
+        abstract void apply(QueryRule rule);
+    }
+
+    private static List<Shape> shapes() {
+        List<Shape> shapes = new ArrayList<Shape>();
+        shapes.add(new Shape("eq") { void apply(QueryRule r) { r.andEqual("name", "a"); } });
+        shapes.add(new Shape("orEq") { void apply(QueryRule r) { r.orEqual("name", "b"); } });
+        shapes.add(new Shape("eqNull") { void apply(QueryRule r) { r.andEqual("name", null); } });
+        shapes.add(new Shape("eqAndColumn") { void apply(QueryRule r) { r.andEqual("brand", "x"); } });
+        shapes.add(new Shape("noEq") { void apply(QueryRule r) { r.andNoEqual("status", 1); } });
+        shapes.add(new Shape("gt") { void apply(QueryRule r) { r.andGreaterThan("age", 18); } });
+        shapes.add(new Shape("ge") { void apply(QueryRule r) { r.andGreaterEqual("age", 18); } });
+        shapes.add(new Shape("lt") { void apply(QueryRule r) { r.andLessThan("age", 60); } });
+        shapes.add(new Shape("orLe") { void apply(QueryRule r) { r.orLessEqual("age", 60); } });
+        shapes.add(new Shape("like") { void apply(QueryRule r) { r.andLike("name", "to*m"); } });
+        shapes.add(new Shape("between") { void apply(QueryRule r) { r.andBetween("id", 1, 9); } });
+        shapes.add(new Shape("orBetween") { void apply(QueryRule r) { r.orBetween("id", 1, 9); } });
+        shapes.add(new Shape("betweenNull") { void apply(QueryRule r) { r.andBetween("id", null, 9); } });
+        shapes.add(new Shape("betweenOne") { void apply(QueryRule r) { r.andBetween("id", 1); } });
+        shapes.add(new Shape("inOne") { void apply(QueryRule r) { r.andIn("id", 1); } });
+        shapes.add(new Shape("inThree") { void apply(QueryRule r) { r.andIn("id", 1, 2, 3); } });
+        shapes.add(new Shape("inList") { void apply(QueryRule r) { r.andIn("id", Arrays.<Object>asList(4, 5)); } });
+        shapes.add(new Shape("orInList") { void apply(QueryRule r) { r.orIn("id", Arrays.<Object>asList(6)); } });
+        shapes.add(new Shape("inEmpty") { void apply(QueryRule r) { r.andIn("id", new Object[0]); } });
+        shapes.add(new Shape("notInList") { void apply(QueryRule r) { r.andNotIn("id", Arrays.<Object>asList(7, 8, 9)); } });
+        shapes.add(new Shape("isNull") { void apply(QueryRule r) { r.andIsNull("remark"); } });
+        shapes.add(new Shape("orIsNotNull") { void apply(QueryRule r) { r.orIsNotNull("remark"); } });
+        shapes.add(new Shape("isEmpty") { void apply(QueryRule r) { r.andIsEmpty("remark"); } });
+        shapes.add(new Shape("isNotEmpty") { void apply(QueryRule r) { r.andIsNotEmpty("remark"); } });
+        shapes.add(new Shape("asc") { void apply(QueryRule r) { r.addAscOrder("id"); } });
+        shapes.add(new Shape("desc") { void apply(QueryRule r) { r.addDescOrder("createTime"); } });
+        shapes.add(new Shape("ascEmpty") { void apply(QueryRule r) { r.addAscOrder(""); } });
+        return shapes;
+    }
+
+    @Test
+    public void singleShapes() {
+        for (Shape a : shapes()) {
+            compare(a);
+        }
+    }
+
+    @Test
+    public void pairs() {
+        List<Shape> shapes = shapes();
+        for (Shape a : shapes) {
+            for (Shape b : shapes) {
+                compare(a, b);
+            }
+        }
+    }
+
+    @Test
+    public void triples() {
+        List<Shape> shapes = shapes();
+        for (Shape a : shapes) {
+            for (Shape b : shapes) {
+                for (Shape c : shapes) {
+                    compare(a, b, c);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void emptyRule() {
+        compare();
+    }
+
+    private static void compare(Shape... combination) {
+        String name = names(combination);
+        QueryRule rule = QueryRule.getInstance();
+        for (Shape shape : combination) {
+            shape.apply(rule);
+        }
+        LegacyQueryRuleSqlBuilder legacy = new LegacyQueryRuleSqlBuilder(rule);
+        QueryRuleSqlBuilder builder = new QueryRuleSqlBuilder(rule);
+        assertEquals(name + " where", legacy.getWhereSql(), builder.getWhereSql());
+        assertEquals(name + " order", legacyOrderSql(legacy.getOrderSql()), builder.getOrderSql());
+        assertArrayEquals(name + " values", legacy.getValueArr(), builder.getValueArr());
+        assertEquals(name + " valueMap", legacy.getValueMap(), builder.getValueMap());
+
+        List<Object> values = new ArrayList<Object>();
+        QueryRulePlan plan = QueryRulePlan.prepare(rule, values);
+        String condition = removeFirstAndOr(legacy.getWhereSql());
+        assertEquals(name + " plan condition", condition, plan.getConditionSql());
+        assertEquals(name + " plan where", condition.isEmpty() ? "" : " where " + condition, plan.getWhereSql());
+        assertEquals(name + " plan order", legacyOrderSql(legacy.planOrderSql()), plan.getOrderSql());
+        assertArrayEquals(name + " plan values", legacy.getValueArr(), values.toArray());
+    }
+
+    // Order{id asc} -> id asc
+    private static String legacyOrderSql(String orderSql) {
+        return orderSql.replaceAll("Order\\{([^}]*)\\}", "$1");
+    }
+
+    private static String removeFirstAndOr(String whereSql) {
+        if(whereSql.startsWith(" and ")){
+            return whereSql.substring(5);
+        }
+        if(whereSql.startsWith(" or ")){
+            return whereSql.substring(4);
+        }
+        return whereSql;
+    }
+
+    @Test
+    public void keepsAndInsideConditions() {
+        QueryRule rule = QueryRule.getInstance().andEqual("brand", "x").andBetween("id", 1, 9).addDescOrder("id");
+        QueryRulePlan plan = QueryRulePlan.prepare(rule, new ArrayList<Object>());
+        assertEquals(" where brand = ?  and id between ? and  ? ", plan.getWhereSql());
+        assertEquals(" order by id desc", plan.getOrderSql());
+    }
+
+    @Test
+    public void firstConditionWithoutParameter() {
+        QueryRule rule = QueryRule.getInstance().orIsNull("remark").andIsNotNull("name");
+        QueryRulePlan plan = QueryRulePlan.prepare(rule, new ArrayList<Object>());
+        assertEquals("name is not null  or remark is null ", plan.getConditionSql());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOrderByInColumn() {
+        new QueryRuleSqlBuilder(QueryRule.getInstance().andEqual("name", "a").andIsNull("x order  by y"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOrderByInOrderColumn() {
+        new QueryRuleSqlBuilder(QueryRule.getInstance().addAscOrder("id order by name"));
+    }
+
+    private static String names(Shape... combination) {
+        StringBuilder sb = new StringBuilder("[");
+        for (Shape shape : combination) {
+            if(sb.length() > 1){
+                sb.append(',');
+            }
+            sb.append(shape.name);
+        }
+        return sb.append(']').toString();
+    }
+}
@@ -0,0 +1,138 @@
+package com.study.spring.orm.framework;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * 读取全表时每行分配的字节数：select返回List、stream逐行转换、scan复用同一个实体
+ * 用com.sun.management.ThreadMXBean统计当前线程的分配量，先预热再取多轮中的最小值
+ * 运行：java -cp target/test-classes:target/classes:依赖 com.study.spring.orm.framework.ScanAllocationBenchmark [行数]
+ */
+public class ScanAllocationBenchmark {
+    private static final int ROUNDS = 5;
+
+    @Entity
+    @Table(name = "t_scan")
+    public static class Row implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        private Long id;
+        private String name;
+        private Integer qty;
+        private Long createTime;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public Integer getQty() { return qty; }
+        public void setQty(Integer qty) { this.qty = qty; }
+        public Long getCreateTime() { return createTime; }
+        public void setCreateTime(Long createTime) { this.createTime = createTime; }
+    }
+
+    public static class RowDao extends BaseDaoSupport<Row, Long> {
+        RowDao(DriverManagerDataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+            setDialect(new H2Dialect());
+        }
+
+        protected String getPKColumn() {
+            return "id";
+        }
+    }
+
+    private interface Reader {
+        long read(RowDao dao) throws Exception;
+    }
+
+    // 防止结果被优化掉
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:mem:scan;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setDriverClassName("org.h2.Driver");
+        new JdbcTemplate(dataSource).execute("create table t_scan(id bigint primary key, name varchar(64), qty int, createTime bigint)");
+        RowDao dao = new RowDao(dataSource);
+        List<Row> data = new ArrayList<Row>(rows);
+        for (int i = 0; i < rows; i++) {
+            Row row = new Row();
+            row.setId((long) i);
+            row.setName("name" + i);
+            row.setQty(i);
+            row.setCreateTime(System.currentTimeMillis());
+            data.add(row);
+        }
+        dao.insertAll(data);
+        data = null;
+
+        run("select", dao, rows, new Reader() {
+            public long read(RowDao dao) throws Exception {
+                long sum = 0;
+                for (Row row : dao.select(QueryRule.getInstance())) {
+                    sum += row.getQty();
+                }
+                return sum;
+            }
+        });
+        run("stream", dao, rows, new Reader() {
+            public long read(RowDao dao) throws Exception {
+                long sum = 0;
+                Stream<Row> stream = dao.stream(QueryRule.getInstance());
+                try {
+                    Iterator<Row> iterator = stream.iterator();
+                    while (iterator.hasNext()) {
+                        sum += iterator.next().getQty();
+                    }
+                } finally {
+                    stream.close();
+                }
+                return sum;
+            }
+        });
+        run("scan", dao, rows, new Reader() {
+            public long read(RowDao dao) throws Exception {
+                final long[] sum = new long[1];
+                dao.scan(QueryRule.getInstance(), new RowVisitor<Row>() {
+                    public boolean visit(Row row, long rowNum) {
+                        sum[0] += row.getQty();
+                        return true;
+                    }
+                });
+                return sum[0];
+            }
+        });
+        System.out.println("sink " + sink);
+    }
+
+    private static void run(String name, RowDao dao, int rows, Reader reader) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // 预热，让JIT完成编译
+        sink += reader.read(dao);
+        long bestBytes = Long.MAX_VALUE;
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            sink += reader.read(dao);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            bestBytes = Math.min(bestBytes, threads.getThreadAllocatedBytes(thread) - bytes);
+        }
+        System.out.println(String.format("%-8s %8.1f bytes/row %8.1f ns/row", name,
+                (double) bestBytes / rows, (double) bestNanos / rows));
+    }
+}
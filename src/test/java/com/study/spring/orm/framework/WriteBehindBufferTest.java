@@ -0,0 +1,314 @@
+package com.study.spring.orm.framework;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 验证写缓冲的合并规则、队列满时阻塞和flush()的写入保证
+ * 后台线程的间隔设得很长，除阻塞用例外只有flush()会写入
+ */
+public class WriteBehindBufferTest {
+    private static final long NEVER = 60000;
+    private static int databases;
+
+    @Entity
+    @Table(name = "t_buffer")
+    public static class BufferItem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        private Long id;
+        private String detail;
+        private Integer qty;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getDetail() { return detail; }
+        public void setDetail(String detail) { this.detail = detail; }
+        public Integer getQty() { return qty; }
+        public void setQty(Integer qty) { this.qty = qty; }
+    }
+
+    public static class BufferItemDao extends BaseDaoSupport<BufferItem, Long> {
+        // 不为null时批量插入等待放行，模拟写入很慢
+        volatile CountDownLatch gate;
+
+        BufferItemDao(DriverManagerDataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+            setDialect(new H2Dialect());
+        }
+
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        @Override
+        public int insertAll(List<BufferItem> list) throws Exception {
+            CountDownLatch latch = gate;
+            if(latch != null){
+                latch.await();
+            }
+            return super.insertAll(list);
+        }
+
+        BufferItem load(Long id) throws Exception {
+            return get(id);
+        }
+
+        long count() throws Exception {
+            return getCount(QueryRule.getInstance());
+        }
+    }
+
+    @Entity
+    @Table(name = "t_buffer_uuid")
+    public static class UuidItem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        private String id;
+        private String detail;
+
+        public String getId() { return id; }
+        public void setId(String id) { this.id = id; }
+        public String getDetail() { return detail; }
+        public void setDetail(String detail) { this.detail = detail; }
+    }
+
+    public static class UuidItemDao extends BaseDaoSupport<UuidItem, String> {
+        UuidItemDao(DriverManagerDataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+            setDialect(new H2Dialect());
+        }
+
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        UuidItem load(String id) throws Exception {
+            return get(id);
+        }
+    }
+
+    private DriverManagerDataSource dataSource;
+    private BufferItemDao dao;
+    private final List<Exception> failures = new ArrayList<Exception>();
+    private final WriteBehindBuffer.FailureListener<BufferItem> listener = new WriteBehindBuffer.FailureListener<BufferItem>() {
+        public void onFailure(WriteBehindBuffer.Kind kind, List<BufferItem> entities, Exception e) {
+            synchronized (failures) {
+                failures.add(e);
+            }
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:buffer" + (databases++) + ";MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        dataSource.setDriverClassName("org.h2.Driver");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table t_buffer(id bigint auto_increment primary key, detail varchar(100), qty int)");
+        jdbcTemplate.execute("create table t_buffer_uuid(id varchar(36) primary key, detail varchar(100))");
+        dao = new BufferItemDao(dataSource);
+        dao.insertAll(Arrays.asList(item(1L, "one", 1), item(2L, "two", 2), item(3L, "three", 3)));
+    }
+
+    @After
+    public void tearDown() {
+        CountDownLatch latch = dao.gate;
+        if(latch != null){
+            latch.countDown();
+        }
+        dao.disableWriteBehind();
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+
+    @Test
+    public void mergesUpdatesColumnByColumn() throws Exception {
+        dao.enableWriteBehind(100, 100, NEVER, listener);
+        BufferItem first = item(1L, "changed", null);
+        BufferItem second = item(1L, null, 10);
+        assertTrue(dao.update(first));
+        assertTrue(dao.update(second));
+        assertEquals("one", dao.load(1L).getDetail());
+
+        dao.flush();
+        BufferItem row = dao.load(1L);
+        assertEquals("changed", row.getDetail());
+        assertEquals(Integer.valueOf(10), row.getQty());
+        // 合并到新实体，调用方的对象不变
+        assertNull(second.getDetail());
+    }
+
+    @Test
+    public void deleteThenInsertReplacesRow() throws Exception {
+        dao.enableWriteBehind(100, 100, NEVER, listener);
+        dao.delete(item(2L, null, null));
+        dao.insert(item(2L, "again", null));
+        dao.flush();
+        BufferItem row = dao.load(2L);
+        assertEquals("again", row.getDetail());
+        // 先删除再插入，原来的列不会保留
+        assertNull(row.getQty());
+    }
+
+    @Test
+    public void deleteDiscardsUpdates() throws Exception {
+        dao.enableWriteBehind(100, 100, NEVER, listener);
+        dao.update(item(3L, "changed", null));
+        dao.delete(item(3L, null, null));
+        dao.update(item(3L, "ignored", null));
+        dao.flush();
+        assertNull(dao.load(3L));
+    }
+
+    @Test
+    public void updateThenInsertUpserts() throws Exception {
+        dao.enableWriteBehind(100, 100, NEVER, listener);
+        dao.update(item(3L, "changed", null));
+        dao.insert(item(3L, "inserted", 30));
+        dao.update(item(4L, "missing", null));
+        dao.insert(item(4L, "new", 40));
+        dao.flush();
+        assertEquals("inserted", dao.load(3L).getDetail());
+        assertEquals(Integer.valueOf(30), dao.load(3L).getQty());
+        assertEquals("new", dao.load(4L).getDetail());
+    }
+
+    @Test
+    public void writesBackGeneratedIds() throws Exception {
+        dao.enableWriteBehind(100, 100, NEVER, listener);
+        BufferItem a = item(null, "a", 1);
+        BufferItem b = item(null, "b", 2);
+        dao.insert(a);
+        dao.insert(b);
+        dao.insert(item(100L, "explicit", 3));
+        dao.flush();
+        assertNotNull(a.getId());
+        assertNotNull(b.getId());
+        assertEquals("a", dao.load(a.getId()).getDetail());
+        assertEquals("b", dao.load(b.getId()).getDetail());
+        assertEquals("explicit", dao.load(100L).getDetail());
+    }
+
+    @Test
+    public void insertsNonNumericKeys() throws Exception {
+        UuidItemDao uuidDao = new UuidItemDao(dataSource);
+        final List<Exception> errors = new ArrayList<Exception>();
+        uuidDao.enableWriteBehind(100, 100, NEVER, new WriteBehindBuffer.FailureListener<UuidItem>() {
+            public void onFailure(WriteBehindBuffer.Kind kind, List<UuidItem> entities, Exception e) {
+                errors.add(e);
+            }
+        });
+        UuidItem item = new UuidItem();
+        item.setId(UUID.randomUUID().toString());
+        item.setDetail("uuid");
+        uuidDao.insert(item);
+        uuidDao.disableWriteBehind();
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertEquals("uuid", uuidDao.load(item.getId()).getDetail());
+    }
+
+    @Test
+    public void blocksWhenFull() throws Exception {
+        dao.gate = new CountDownLatch(1);
+        final WriteBehindBuffer<BufferItem> buffer = dao.enableWriteBehind(2, 2, NEVER, listener);
+        // 前两条达到batchSize，后台线程取走后在插入时等待
+        dao.insert(item(10L, "10", null));
+        dao.insert(item(11L, "11", null));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, buffer.size());
+        dao.insert(item(12L, "12", null));
+        dao.insert(item(13L, "13", null));
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    dao.insert(item(14L, "14", null));
+                    submitted.countDown();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+        assertEquals(1, submitted.getCount());
+        assertEquals(2, buffer.size());
+
+        dao.gate.countDown();
+        writer.join(5000);
+        assertEquals(0, submitted.getCount());
+        dao.flush();
+        assertEquals(8, dao.count());
+    }
+
+    @Test
+    public void flushWaitsForBackgroundWrite() throws Exception {
+        dao.gate = new CountDownLatch(1);
+        WriteBehindBuffer<BufferItem> buffer = dao.enableWriteBehind(10, 1, NEVER, listener);
+        dao.insert(item(20L, "20", null));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (buffer.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // 后台线程已取走数据但还没写完，flush()要等它完成
+        Thread releaser = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                dao.gate.countDown();
+            }
+        });
+        releaser.start();
+        dao.flush();
+        assertEquals("20", dao.load(20L).getDetail());
+        releaser.join();
+    }
+
+    @Test
+    public void writesSynchronouslyAfterClose() throws Exception {
+        WriteBehindBuffer<BufferItem> buffer = dao.enableWriteBehind(10, 10, NEVER, listener);
+        dao.insert(item(30L, "buffered", null));
+        dao.disableWriteBehind();
+        assertFalse(buffer.insert(item(31L, "rejected", null)));
+        assertNull(dao.load(31L));
+        assertTrue(dao.insert(item(31L, "direct", null)));
+        assertEquals("buffered", dao.load(30L).getDetail());
+        assertEquals("direct", dao.load(31L).getDetail());
+    }
+
+    private static BufferItem item(Long id, String detail, Integer qty) {
+        BufferItem item = new BufferItem();
+        item.setId(id);
+        item.setDetail(detail);
+        item.setQty(qty);
+        return item;
+    }
+}
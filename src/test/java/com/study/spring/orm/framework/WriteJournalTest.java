@@ -0,0 +1,165 @@
+package com.study.spring.orm.framework;
+
+import org.h2.tools.Server;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.Serializable;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 停止嵌入的H2 TCP服务模拟数据库不可用，验证写日志的记录、后台回放和恢复直接写入
+ */
+public class WriteJournalTest {
+
+    @Entity
+    @Table(name = "t_journal")
+    public static class JournalItem implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Id
+        private Long id;
+        private String detail;
+        private Integer qty;
+
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public String getDetail() { return detail; }
+        public void setDetail(String detail) { this.detail = detail; }
+        public Integer getQty() { return qty; }
+        public void setQty(Integer qty) { this.qty = qty; }
+    }
+
+    public static class JournalItemDao extends BaseDaoSupport<JournalItem, Long> {
+        JournalItemDao(DriverManagerDataSource dataSource) {
+            setDataSourceReadOnly(dataSource);
+            setDataSourceWrite(dataSource);
+            setDialect(new H2Dialect());
+        }
+
+        protected String getPKColumn() {
+            return "id";
+        }
+
+        JournalItem load(Long id) throws Exception {
+            return get(id);
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private int port;
+    private File baseDir;
+    private Server server;
+    private JournalItemDao dao;
+
+    @Before
+    public void setUp() throws Exception {
+        ServerSocket socket = new ServerSocket(0);
+        port = socket.getLocalPort();
+        socket.close();
+        baseDir = folder.newFolder("db");
+        startServer();
+        DriverManagerDataSource dataSource = new DriverManagerDataSource("jdbc:h2:tcp://localhost:" + port + "/./journal;MODE=MySQL", "sa", "");
+        dataSource.setDriverClassName("org.h2.Driver");
+        new JdbcTemplate(dataSource).execute("create table t_journal(id bigint primary key, detail varchar(100000), qty int)");
+        dao = new JournalItemDao(dataSource);
+    }
+
+    @After
+    public void tearDown() {
+        dao.closeJournal();
+        if(server != null){
+            server.stop();
+        }
+    }
+
+    private void startServer() throws Exception {
+        server = Server.createTcpServer("-tcpPort", String.valueOf(port), "-baseDir", baseDir.getPath(), "-ifNotExists").start();
+    }
+
+    @Test
+    public void journalsWhileDownAndReplaysInBackground() throws Exception {
+        WriteJournal<JournalItem> journal = dao.openJournal(folder.newFolder("journal"), 1 << 20, 50);
+        assertTrue(dao.saveOrJournal(item(1L, "first", 1)));
+        assertEquals(0, journal.pending());
+
+        server.stop();
+        char[] chars = new char[70000];
+        Arrays.fill(chars, '中');
+        String longDetail = new String(chars);
+        dao.saveOrJournal(item(2L, longDetail, 2));
+        dao.deleteOrJournal(item(1L, null, null));
+        assertEquals(2, journal.pending());
+
+        // 数据库不可用时后台回放失败，记录保留
+        Thread.sleep(300);
+        assertEquals(2, journal.pending());
+        // 日志没有回放完之前，数据库恢复后的写入也先记录到日志
+        startServer();
+        dao.saveOrJournal(item(3L, "third", 3));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (journal.pending() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(0, journal.pending());
+        assertNull(dao.load(1L));
+        assertEquals(longDetail, dao.load(2L).getDetail());
+        assertEquals(Integer.valueOf(3), dao.load(3L).getQty());
+
+        // 日志回放完后直接写数据库
+        assertTrue(dao.saveOrJournal(item(4L, "direct", 4)));
+        assertEquals(0, journal.pending());
+        assertEquals("direct", dao.load(4L).getDetail());
+    }
+
+    @Test
+    public void encodesBytesAndLongStrings() throws Exception {
+        char[] chars = new char[40000];
+        Arrays.fill(chars, 'é');
+        String longString = new String(chars);
+        byte[] payload = {1, 2, 3, 0, -1};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ValueCodec.write(out, longString);
+        ValueCodec.write(out, payload);
+        ValueCodec.write(out, "short");
+        out.flush();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(longString, ValueCodec.read(in));
+        assertArrayEquals(payload, (byte[]) ValueCodec.read(in));
+        assertEquals("short", ValueCodec.read(in));
+        assertTrue(ValueCodec.supports(byte[].class));
+        assertFalse(ValueCodec.supports(Character.class));
+    }
+
+    private static JournalItem item(Long id, String detail, Integer qty) {
+        JournalItem item = new JournalItem();
+        item.setId(id);
+        item.setDetail(detail);
+        item.setQty(qty);
+        return item;
+    }
+}